@@ -0,0 +1,75 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// saveTransactionToCSV: appending new transactions through the journal, one at a time and in
+// batches, under each fsync policy. Run with -t to see how group commit scales with threads.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AppendBenchmark {
+    private static final int BATCH = 100;
+
+    @Param({"EVERY_WRITE", "INTERVAL", "RECORDS"})
+    public LedgerJournal.FsyncPolicy policy;
+
+    private Path directory;
+    private Path file;
+    private LedgerJournal journal;
+    private Transaction transaction;
+    private List<Transaction> batch;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ledger-bench");
+        file = directory.resolve("transactions.csv");
+        journal = LedgerJournal.open(file, policy, policy == LedgerJournal.FsyncPolicy.INTERVAL ? 100 : 1000);
+        LedgerGenerator generator = new LedgerGenerator(LedgerGenerator.SEED);
+        transaction = generator.next();
+        batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(generator.next());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public void append() throws IOException {
+        journal.append(transaction);
+    }
+
+    // Throughput is in batches; multiply by 100 for transactions
+    @Benchmark
+    public void appendAll() throws IOException {
+        journal.appendAll(batch);
+    }
+}
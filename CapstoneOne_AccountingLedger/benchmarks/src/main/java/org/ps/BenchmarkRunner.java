@@ -0,0 +1,30 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the benchmarks with the GC profiler, so every result comes with its allocation rate
+// (gc.alloc.rate.norm is bytes allocated per operation).
+//
+// Usage: java -jar target/benchmarks.jar [benchmark regex] [rows]
+//   e.g. java -jar target/benchmarks.jar Report 1000000
+// For the full JMH command line, use java -cp target/benchmarks.jar org.openjdk.jmh.Main instead.
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.include(args.length > 0 ? args[0] : "org\\.ps\\..*Benchmark");
+        if (args.length > 1) {
+            builder.param("rows", args[1]);
+        }
+        Options options = builder
+                .addProfiler(GCProfiler.class)
+                .jvmArgsPrepend("--add-modules", "jdk.incubator.vector") // Same kernels as the application
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,78 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+// Synthetic ledgers for the benchmarks. The same seed always gives the same rows.
+// Rows cover the three years up to today, so the month and year reports find data; about one
+// row in four is a deposit, the rest are payments. Descriptions and vendors repeat the way
+// real ledgers do (a few hundred vendors, a few thousand descriptions).
+public final class LedgerGenerator {
+    public static final long SEED = 42;
+    public static final int VENDORS = 500;
+    public static final int DESCRIPTIONS = 5000;
+    private static final int DAYS = 3 * 365;
+
+    private final SplittableRandom random;
+    private final int today = DateTimeCodec.today();
+
+    public LedgerGenerator(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    // The next synthetic transaction
+    public Transaction next() {
+        int day = today - random.nextInt(DAYS);
+        int second = random.nextInt(86400);
+        boolean deposit = random.nextInt(4) == 0;
+        long cents = deposit ? 10_000 + random.nextInt(500_000) : -(100 + random.nextInt(50_000));
+        return Transaction.ofCents(day, second, description(random.nextInt(DESCRIPTIONS)), vendor(random.nextInt(VENDORS)), cents);
+    }
+
+    public static String vendor(int id) {
+        return "Vendor " + id;
+    }
+
+    public static String description(int id) {
+        return "Purchase " + id;
+    }
+
+    // A ledger with the given number of rows and its indexes built
+    public static Ledger ledger(int rows) {
+        Ledger ledger = new Ledger();
+        LedgerStore store = ledger.getStore();
+        LedgerGenerator generator = new LedgerGenerator(SEED);
+        for (int i = 0; i < rows; i++) {
+            store.add(generator.next());
+        }
+        ledger.refreshIndexes();
+        return ledger;
+    }
+
+    // Lines in the transactions.csv format
+    public static String[] csvLines(int rows) {
+        String[] lines = new String[rows];
+        LedgerGenerator generator = new LedgerGenerator(SEED);
+        for (int i = 0; i < rows; i++) {
+            lines[i] = generator.next().toCSV();
+        }
+        return lines;
+    }
+
+    // Write a transactions.csv file with the given number of rows
+    public static void writeCsv(Path path, int rows) throws IOException {
+        LedgerGenerator generator = new LedgerGenerator(SEED);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < rows; i++) {
+                writer.write(generator.next().toCSV());
+                writer.newLine();
+            }
+        }
+    }
+}
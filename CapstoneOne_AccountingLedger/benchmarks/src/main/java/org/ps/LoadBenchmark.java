@@ -0,0 +1,89 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Startup: loading transactions.csv the ways Main.loadTransactions can (sequential parser,
+// parallel parser, binary snapshot) and building the indexes over the loaded rows
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class LoadBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    private Path directory;
+    private Path csv;
+    private Path snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ledger-bench");
+        csv = directory.resolve("transactions.csv");
+        snapshot = directory.resolve("transactions.snapshot");
+        LedgerGenerator.writeCsv(csv, rows);
+        LedgerStore store = new LedgerStore();
+        new LedgerCsvParser(store).load(csv);
+        LedgerSnapshot.write(store, snapshot, csv);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(snapshot);
+        Files.deleteIfExists(csv);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public LedgerStore parseCsv() throws IOException {
+        LedgerStore store = new LedgerStore();
+        new LedgerCsvParser(store).load(csv);
+        return store;
+    }
+
+    @Benchmark
+    public LedgerStore parseCsvParallel() throws IOException {
+        LedgerStore store = new LedgerStore();
+        LedgerCsvParser.loadParallel(csv, store, ForkJoinPool.commonPool());
+        return store;
+    }
+
+    @Benchmark
+    public LedgerStore readSnapshot() {
+        LedgerStore store = new LedgerStore();
+        if (!LedgerSnapshot.read(snapshot, csv, store)) {
+            throw new IllegalStateException("Snapshot was not used");
+        }
+        return store;
+    }
+
+    // What the application does at startup: the rows plus every index
+    @Benchmark
+    public Ledger loadTransactions() throws IOException {
+        Ledger ledger = new Ledger();
+        new LedgerCsvParser(ledger.getStore()).load(csv);
+        ledger.refreshIndexes();
+        return ledger;
+    }
+}
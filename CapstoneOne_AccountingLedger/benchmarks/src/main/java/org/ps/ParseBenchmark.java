@@ -0,0 +1,68 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Per-line costs: parsing one CSV line and validating its date and time text
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    private static final int LINES = 4096; // Cycled through, so the branch predictor cannot learn one line
+
+    private String[] lines;
+    private String[] dates;
+    private String[] times;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        lines = LedgerGenerator.csvLines(LINES);
+        dates = new String[LINES];
+        times = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            dates[i] = lines[i].substring(0, 10);
+            times[i] = lines[i].substring(11, 19);
+        }
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (LINES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public Transaction fromCsv() {
+        return Transaction.fromCsv(lines[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean isValidDate() {
+        return Transaction.isValidDate(dates[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean isValidTime() {
+        return Transaction.isValidTime(times[nextIndex()]);
+    }
+
+    @Benchmark
+    public String toCsv() {
+        return Transaction.fromCsv(lines[nextIndex()]).toCSV();
+    }
+}
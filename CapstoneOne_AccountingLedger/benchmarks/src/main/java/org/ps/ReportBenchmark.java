@@ -0,0 +1,102 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Every report of the reports menu. Each benchmark clears the result cache first, so it measures
+// the work behind a report; reportCached measures a repeated report answered from the cache.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ReportBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    private Ledger ledger;
+    private ReportEngine engine;
+    private int today;
+
+    @Setup
+    public void setUp() {
+        ledger = LedgerGenerator.ledger(rows);
+        engine = new ReportEngine(ledger);
+        today = DateTimeCodec.today();
+    }
+
+    // A menu report: the grouped report from the report engine plus the totals from the totals index,
+    // with the groupings the menu uses
+    private void periodReport(ReportQuery query, Blackhole blackhole) {
+        ledger.getCache().clear();
+        blackhole.consume(engine.run(query));
+        blackhole.consume(ledger.read(() -> ledger.getTotals().getRangeTotals(query.getFromDay(), query.getToDay())));
+    }
+
+    @Benchmark
+    public void monthToDate(Blackhole blackhole) {
+        periodReport(ReportQuery.monthToDate(today).groupBy(ReportQuery.GroupBy.DAY), blackhole);
+    }
+
+    @Benchmark
+    public void previousMonth(Blackhole blackhole) {
+        periodReport(ReportQuery.previousMonth(today).groupBy(ReportQuery.GroupBy.DAY), blackhole);
+    }
+
+    @Benchmark
+    public void yearToDate(Blackhole blackhole) {
+        periodReport(ReportQuery.yearToDate(today).groupBy(ReportQuery.GroupBy.MONTH), blackhole);
+    }
+
+    @Benchmark
+    public void previousYear(Blackhole blackhole) {
+        periodReport(ReportQuery.previousYear(today).groupBy(ReportQuery.GroupBy.MONTH), blackhole);
+    }
+
+    @Benchmark
+    public void customRange(Blackhole blackhole) {
+        periodReport(new ReportQuery().between(today - 90, today).groupBy(ReportQuery.GroupBy.MONTH), blackhole);
+    }
+
+    @Benchmark
+    public int[] searchByVendor() {
+        return ledger.readLocked(() -> ledger.getVendors().rowsOf(ledger.getVendors().findVendors("Vendor 42")));
+    }
+
+    @Benchmark
+    public ReportEngine.Result groupByMonth() {
+        ledger.getCache().clear();
+        return engine.run(new ReportQuery().groupBy(ReportQuery.GroupBy.MONTH));
+    }
+
+    @Benchmark
+    public ReportEngine.Result groupByVendor() {
+        ledger.getCache().clear();
+        return engine.run(new ReportQuery().sign(ReportQuery.Sign.EXPENSES).groupBy(ReportQuery.GroupBy.VENDOR));
+    }
+
+    @Benchmark
+    public ReportEngine.Result reportCached() {
+        return engine.run(ReportQuery.yearToDate(today).groupBy(ReportQuery.GroupBy.WEEK));
+    }
+
+    @Benchmark
+    public TotalsIndex.PeriodTotals totals() {
+        return ledger.read(() -> ledger.getTotals().getTotals());
+    }
+}
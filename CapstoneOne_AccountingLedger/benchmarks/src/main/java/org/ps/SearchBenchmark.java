@@ -0,0 +1,79 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Searching every field for a term: the old per-object matchesSearchTerm scan, the same check
+// over the column store, the search index, and the index behind the result cache
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SearchBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"Vendor 42", "purchase 1", "12:3"})
+    public String term;
+
+    private Ledger ledger;
+    private LedgerStore store;
+    private Transaction[] transactions;
+    private long amountCents; // An amount that occurs in the ledger
+
+    @Setup
+    public void setUp() {
+        ledger = LedgerGenerator.ledger(rows);
+        store = ledger.getStore();
+        amountCents = store.getAmountCents(rows / 2);
+        transactions = new Transaction[rows];
+        for (int row = 0; row < rows; row++) {
+            transactions[row] = store.toTransaction(row);
+        }
+    }
+
+    @Benchmark
+    public void matchesSearchTerm(Blackhole blackhole) {
+        for (Transaction transaction : transactions) {
+            blackhole.consume(transaction.matchesSearchTerm(term, false));
+        }
+    }
+
+    @Benchmark
+    public void scanStore(Blackhole blackhole) {
+        for (int row = 0; row < rows; row++) {
+            blackhole.consume(store.matchesSearchTerm(row, term, false));
+        }
+    }
+
+    @Benchmark
+    public int[] searchIndex() {
+        return ledger.readLocked(() -> ledger.getSearch().search(term, false));
+    }
+
+    @Benchmark
+    public int[] searchCached() {
+        return ledger.search(term, false);
+    }
+
+    @Benchmark
+    public int[] searchAmount() {
+        return ledger.readLocked(() -> ledger.getSearch().searchAmount(amountCents));
+    }
+}
@@ -0,0 +1,51 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// sortTransactions: building a display order from scratch, and asking the ledger for an order
+// it already has cached
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SortBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"DATE", "TIME", "AMOUNT", "VENDOR", "DESCRIPTION"})
+    public SortIndex.Key key;
+
+    private Ledger ledger;
+
+    @Setup
+    public void setUp() {
+        ledger = LedgerGenerator.ledger(rows);
+        ledger.order(key);
+    }
+
+    @Benchmark
+    public int[] sortCold() {
+        return new SortIndex(ledger.getStore(), ledger.getDates()).order(key);
+    }
+
+    @Benchmark
+    public int[] sortCached() {
+        return ledger.order(key);
+    }
+}
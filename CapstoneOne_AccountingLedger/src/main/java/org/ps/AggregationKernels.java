@@ -0,0 +1,47 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+// Aggregation loops over the ledger's primitive columns: income/expense sums and date-range sums. Sums are exact and throw ArithmeticException rather than overflow.
+//
+// There are two implementations. VectorKernels uses the jdk.incubator.vector API and is picked when
+// that module is present (run with --add-modules jdk.incubator.vector). Otherwise ScalarKernels is used.
+// -Dledger.kernels=scalar forces the scalar version.
+public interface AggregationKernels {
+
+    // Exact sum of the positive values in values[from, to)
+    long sumIncome(long[] values, int from, int to);
+
+    // Exact sum of the negative values in values[from, to) (zero or negative)
+    long sumExpenses(long[] values, int from, int to);
+
+    // Add the income and expenses of the rows in [from, to) dated fromDay to toDay (inclusive)
+    // to totals[0] and totals[1]
+    void sumInRange(int[] epochDays, long[] amounts, int from, int to, int fromDay, int toDay, long[] totals);
+
+    // The best implementation available in this JVM
+    static AggregationKernels get() {
+        return Holder.INSTANCE;
+    }
+
+    // Lazily picks the implementation once
+    final class Holder {
+        static final AggregationKernels INSTANCE = load();
+
+        private Holder() {
+        }
+
+        private static AggregationKernels load() {
+            boolean vectorModule = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+            if (!vectorModule || "scalar".equals(System.getProperty("ledger.kernels"))) {
+                return new ScalarKernels();
+            }
+            try {
+                // Loaded by name so this class never links against the incubator module itself
+                return (AggregationKernels) Class.forName("org.ps.VectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return new ScalarKernels();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.util.Arrays;
+
+// Secondary index that keeps the row numbers ordered by (date, time) without moving any rows.
+// Period queries binary-search the sorted keys, so a one-month report only touches that month's rows.
+// Rows with the same date and time stay in the order they were added.
+public class DateIndex {
+    private static final int TIME_BITS = 17; // 86400 seconds fit in 17 bits
+
+    private int indexedRows; // Rows of the store already indexed
+    private int[] rows = new int[16]; // Row numbers sorted by key
+    private long[] keys = new long[16]; // Packed (epoch day, second of day) key of each entry
+    private int size;
+
+    // Pack a date and time into one sortable key
+    public static long key(int epochDay, int secondOfDay) {
+        return ((long) epochDay << TIME_BITS) | secondOfDay;
+    }
+
+    // Index every row of the store that has not been indexed yet
+    public void update(LedgerStore store) {
+        int total = store.size();
+        if (indexedRows == total) {
+            return;
+        }
+        int count = total - indexedRows;
+        int[] newRows = new int[count];
+        long[] newKeys = new long[count];
+        boolean sorted = true;
+        long previous = size == 0 ? Long.MIN_VALUE : keys[size - 1];
+        for (int i = 0; i < count; i++) {
+            int row = indexedRows + i;
+            newRows[i] = row;
+            newKeys[i] = key(store.getEpochDay(row), store.getSecondOfDay(row));
+            sorted &= newKeys[i] >= previous;
+            previous = newKeys[i];
+        }
+        ensureCapacity(size + count);
+        if (sorted) {
+            // Usual case: new transactions are dated now, so they go at the end
+            System.arraycopy(newRows, 0, rows, size, count);
+            System.arraycopy(newKeys, 0, keys, size, count);
+            size += count;
+        } else {
+            RadixSort.sort(newRows, newKeys, count);
+            merge(newRows, newKeys);
+        }
+        indexedRows = total;
+    }
+
+    // Merge sorted new entries into the sorted entries already in the index
+    private void merge(int[] newRows, long[] newKeys) {
+        int i = size - 1;
+        int j = newRows.length - 1;
+        int out = size + newRows.length - 1;
+        while (j >= 0) {
+            if (i >= 0 && keys[i] > newKeys[j]) { // Strictly greater, so older rows stay first on ties
+                keys[out] = keys[i];
+                rows[out--] = rows[i--];
+            } else {
+                keys[out] = newKeys[j];
+                rows[out--] = newRows[j--];
+            }
+        }
+        size += newRows.length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > rows.length) {
+            int newLength = Math.max(capacity, rows.length * 2);
+            rows = Arrays.copyOf(rows, newLength);
+            keys = Arrays.copyOf(keys, newLength);
+        }
+    }
+
+    // First position whose key is at least the given key
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Rows dated from fromDay to toDay (inclusive), in date and time order
+    public int[] rowsBetween(int fromDay, int toDay) {
+        if (fromDay > toDay) {
+            return new int[0];
+        }
+        int from = lowerBound(key(fromDay, 0));
+        int to = toDay == Integer.MAX_VALUE ? size : lowerBound(key(toDay + 1, 0)); // Open-ended range
+        return Arrays.copyOfRange(rows, from, to);
+    }
+
+    // Rows of the last days days, ending with today
+    public int[] rowsInLastDays(int days, int today) {
+        return rowsBetween(today - days + 1, today);
+    }
+
+    // Rows of the Monday to Sunday week that contains the given day
+    public int[] rowsInWeek(int epochDay) {
+        int monday = epochDay - Math.floorMod(epochDay + 3, 7); // 1970-01-01 was a Thursday
+        return rowsBetween(monday, monday + 6);
+    }
+
+    // Every row in date and time order
+    public int[] allRows() {
+        return Arrays.copyOf(rows, size);
+    }
+
+    // Number of indexed rows
+    public int size() {
+        return size;
+    }
+
+    // Forget every row, e.g. before the ledger is reloaded
+    public void clear() {
+        indexedRows = 0;
+        size = 0;
+        rows = new int[16];
+        keys = new long[16];
+    }
+}
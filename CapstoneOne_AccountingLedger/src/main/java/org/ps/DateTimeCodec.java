@@ -0,0 +1,203 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneId;
+
+// Validates and packs the ledger's date (yyyy-MM-dd) and time (HH:mm:ss) formats.
+// Dates are packed as days since 1970-01-01 and times as seconds since midnight.
+// Parsing is hand-rolled digit by digit with the proleptic Gregorian calendar rules,
+// keeps no state and allocates nothing, so it is safe to call from any thread.
+public final class DateTimeCodec {
+    public static final int INVALID = Integer.MIN_VALUE; // Returned when a date or time does not parse
+    private static final int DAYS_0000_TO_1970 = 719468; // Days from 0000-03-01 to 1970-01-01
+    private static final ZoneId ZONE = ZoneId.systemDefault(); // Zone used for "today" and "now"
+
+    private DateTimeCodec() {
+    }
+
+    // Check if the date format is valid (yyyy-MM-dd)
+    public static boolean isValidDate(CharSequence date) {
+        return parseDate(date) != INVALID;
+    }
+
+    // Check if the time format is valid (HH:mm:ss)
+    public static boolean isValidTime(CharSequence time) {
+        return parseTime(time) != INVALID;
+    }
+
+    // Decode yyyy-MM-dd into days since 1970-01-01, or INVALID
+    public static int parseDate(CharSequence date) {
+        if (date == null || date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return INVALID;
+        }
+        return toEpochDay(digits(date, 0, 4), digits(date, 5, 2), digits(date, 8, 2));
+    }
+
+    // Decode the yyyy-MM-dd text in buffer[start, end) into days since 1970-01-01, or INVALID
+    public static int parseDate(ByteBuffer buffer, int start, int end) {
+        if (end - start != 10 || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-') {
+            return INVALID;
+        }
+        return toEpochDay(digits(buffer, start, 4), digits(buffer, start + 5, 2), digits(buffer, start + 8, 2));
+    }
+
+    // Decode HH:mm:ss into seconds since midnight, or INVALID
+    public static int parseTime(CharSequence time) {
+        if (time == null || time.length() != 8 || time.charAt(2) != ':' || time.charAt(5) != ':') {
+            return INVALID;
+        }
+        return toSecondOfDay(digits(time, 0, 2), digits(time, 3, 2), digits(time, 6, 2));
+    }
+
+    // Decode the HH:mm:ss text in buffer[start, end) into seconds since midnight, or INVALID
+    public static int parseTime(ByteBuffer buffer, int start, int end) {
+        if (end - start != 8 || buffer.get(start + 2) != ':' || buffer.get(start + 5) != ':') {
+            return INVALID;
+        }
+        return toSecondOfDay(digits(buffer, start, 2), digits(buffer, start + 3, 2), digits(buffer, start + 6, 2));
+    }
+
+    // Days since 1970-01-01 for a calendar date, or INVALID if the date does not exist
+    public static int toEpochDay(int year, int month, int day) {
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return INVALID;
+        }
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    // Seconds since midnight for a time of day, or INVALID if the time does not exist
+    public static int toSecondOfDay(int hours, int minutes, int seconds) {
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59) {
+            return INVALID;
+        }
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+
+    public static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    public static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            return isLeapYear(year) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // Year, month and day of an epoch day packed as yyyymmdd (e.g. 20241018)
+    public static int toYearMonthDay(int epochDay) {
+        int z = epochDay + DAYS_0000_TO_1970;
+        int era = Math.floorDiv(z, 146097);
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 10000 + month * 100 + day;
+    }
+
+    public static int year(int epochDay) {
+        return toYearMonthDay(epochDay) / 10000;
+    }
+
+    public static int month(int epochDay) {
+        return toYearMonthDay(epochDay) / 100 % 100;
+    }
+
+    public static int dayOfMonth(int epochDay) {
+        return toYearMonthDay(epochDay) % 100;
+    }
+
+    // Format an epoch day as yyyy-MM-dd
+    public static String formatDate(int epochDay) {
+        char[] chars = new char[10];
+        writeDate(chars, 0, epochDay);
+        return new String(chars);
+    }
+
+    // Format seconds since midnight as HH:mm:ss
+    public static String formatTime(int secondOfDay) {
+        char[] chars = new char[8];
+        writeTime(chars, 0, secondOfDay);
+        return new String(chars);
+    }
+
+    // Write yyyy-MM-dd into chars starting at offset
+    public static void writeDate(char[] chars, int offset, int epochDay) {
+        int ymd = toYearMonthDay(epochDay);
+        int year = ymd / 10000;
+        chars[offset] = (char) ('0' + year / 1000 % 10);
+        chars[offset + 1] = (char) ('0' + year / 100 % 10);
+        chars[offset + 2] = (char) ('0' + year / 10 % 10);
+        chars[offset + 3] = (char) ('0' + year % 10);
+        chars[offset + 4] = '-';
+        writeTwoDigits(chars, offset + 5, ymd / 100 % 100);
+        chars[offset + 7] = '-';
+        writeTwoDigits(chars, offset + 8, ymd % 100);
+    }
+
+    // Write HH:mm:ss into chars starting at offset
+    public static void writeTime(char[] chars, int offset, int secondOfDay) {
+        writeTwoDigits(chars, offset, secondOfDay / 3600);
+        chars[offset + 2] = ':';
+        writeTwoDigits(chars, offset + 3, secondOfDay / 60 % 60);
+        chars[offset + 5] = ':';
+        writeTwoDigits(chars, offset + 6, secondOfDay % 60);
+    }
+
+    private static void writeTwoDigits(char[] chars, int offset, int value) {
+        chars[offset] = (char) ('0' + value / 10);
+        chars[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    // Today's date in the system time zone as an epoch day
+    public static int today() {
+        return (int) Math.floorDiv(localEpochSecond(), 86400);
+    }
+
+    // The current local time as seconds since midnight
+    public static int nowSecondOfDay() {
+        return Math.floorMod(localEpochSecond(), 86400);
+    }
+
+    private static long localEpochSecond() {
+        long millis = System.currentTimeMillis();
+        int offset = ZONE.getRules().getOffset(Instant.ofEpochMilli(millis)).getTotalSeconds();
+        return Math.floorDiv(millis, 1000) + offset;
+    }
+
+    // Read count decimal digits, or -1 if any of them is not a digit
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int digits(ByteBuffer buffer, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
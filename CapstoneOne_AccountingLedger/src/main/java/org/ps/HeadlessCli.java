@@ -0,0 +1,474 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+// Non-interactive commands for scripts: one command per run, no menus and no prompts.
+//
+//   import <file | ->                      Append the transactions of a file (or stdin) to the ledger
+//   report [filters] [--group-by <g>]      Count, sum, min, max and average per group, tab-separated
+//   search <term> [--case-sensitive]       Matching transactions in the transactions.csv layout
+//   list [--offset N] [--limit N] [--sort <key>]
+//   totals [--from <date>] [--to <date>]   Income, expenses and net, tab-separated
+//   snapshot                               Write the binary snapshot for fast startup
+//   migrate                                Split transactions.csv into per-month partitions (once)
+//   archive [--before yyyy]                Compress the partitions of closed years (default: before this year)
+//   stats                                  Load the ledger and print the load metrics and cache counters
+//   serve [--host h] [--port N]            Load the ledger and answer the HTTP API until stopped (LedgerHttpServer)
+//
+// Any command also takes --stats to print the metrics of its own run to stderr when it is done.
+//
+// Report filters: --from <yyyy-MM-dd> --to <yyyy-MM-dd> --vendor <text> --sign all|income|expenses
+// --min <amount> --max <amount>; groups: none, day, week, month, year, vendor.
+//
+// Each command loads only what it needs: import loads nothing, a report with a date range only
+// the partitions and archive blocks that overlap it, and totals on a partitioned ledger only read the
+// manifest, the archive indexes and whatever the range cuts through.
+//
+// Results go to stdout through the ledger printer; messages go to stderr. The exit status is
+// 0 on success, 1 if the command failed and 2 if the command line was wrong.
+public class HeadlessCli {
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILURE = 1;
+    public static final int EXIT_USAGE = 2;
+
+    private static final int IMPORT_BATCH = 1 << 16; // Rows per journal write and ledger update
+    private static final int DEFAULT_PORT = 8080;
+
+    // Loads at least the transactions dated fromDay to toDay into the ledger
+    public interface Loader {
+        void load(int fromDay, int toDay) throws IOException;
+    }
+
+    private final Ledger ledger;
+    private final TransactionLog journal;
+    private final LedgerPartitions partitions; // Null for a flat CSV
+    private final Loader loader;
+    private final LedgerPrinter printer;
+    private final Path csvFile;
+    private final Path snapshotFile;
+    private final Path partitionDirectory;
+
+    // A wrong command line; the message is printed with the usage
+    private static final class UsageException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    public HeadlessCli(Ledger ledger, TransactionLog journal, LedgerPartitions partitions, Loader loader, LedgerPrinter printer,
+                       Path csvFile, Path snapshotFile, Path partitionDirectory) {
+        this.ledger = ledger;
+        this.journal = journal;
+        this.partitions = partitions;
+        this.loader = loader;
+        this.printer = printer;
+        this.csvFile = csvFile;
+        this.snapshotFile = snapshotFile;
+        this.partitionDirectory = partitionDirectory;
+    }
+
+    // Run the command in args and return the exit status
+    public int run(String[] args) {
+        int status = execute(args);
+        try {
+            printer.flush();
+        } catch (UncheckedIOException e) {
+            System.err.println("Error: " + e.getMessage());
+            status = EXIT_FAILURE;
+        }
+        if (Arrays.asList(args).contains("--stats")) {
+            for (String line : statsLines()) {
+                System.err.println(line);
+            }
+        }
+        return status;
+    }
+
+    // Run the command; any failure, including a failed write to stdout (UncheckedIOException from
+    // the printer) or an overflowing total (ArithmeticException), gives EXIT_FAILURE
+    private int execute(String[] args) {
+        try {
+            if (args.length == 0) {
+                throw new UsageException("Missing command");
+            }
+            List<String> positional = new ArrayList<>();
+            Map<String, String> options = parseOptions(args, positional);
+            switch (args[0]) {
+                case "import":
+                    return importTransactions(single(positional, "file"));
+                case "report":
+                    return report(options);
+                case "search":
+                    return search(single(positional, "search term"), options.containsKey("case-sensitive"));
+                case "list":
+                    return list(options);
+                case "totals":
+                    return totals(options);
+                case "snapshot":
+                    return snapshot();
+                case "migrate":
+                    return migrate();
+                case "archive":
+                    return archive(options);
+                case "stats":
+                    return stats();
+                case "serve":
+                    return serve(options);
+                case "help":
+                    printUsage();
+                    return EXIT_OK;
+                default:
+                    throw new UsageException("Unknown command: " + args[0]);
+            }
+        } catch (UsageException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            return EXIT_USAGE;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return EXIT_FAILURE;
+        } catch (RuntimeException e) {
+            System.err.println("Error: " + e);
+            return EXIT_FAILURE;
+        }
+    }
+
+    // Split args after the command into --name value options and positional arguments.
+    // --case-sensitive and --stats are the only options without a value.
+    private static Map<String, String> parseOptions(String[] args, List<String> positional) throws UsageException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--case-sensitive") || arg.equals("--stats")) {
+                options.put(arg.substring(2), "");
+            } else if (arg.startsWith("--")) {
+                if (i + 1 == args.length) {
+                    throw new UsageException("Missing value for " + arg);
+                }
+                options.put(arg.substring(2), args[++i]);
+            } else {
+                positional.add(arg);
+            }
+        }
+        return options;
+    }
+
+    private static String single(List<String> positional, String name) throws UsageException {
+        if (positional.size() != 1) {
+            throw new UsageException("Expected one " + name);
+        }
+        return positional.get(0);
+    }
+
+    // Stream the file through a scratch store one block at a time and append it to the journal and
+    // the ledger in large batches: one write per batch instead of one per transaction, and no more
+    // than a batch of parsed rows in memory however large the file is
+    private int importTransactions(String file) throws IOException {
+        if (journal == null) {
+            throw new IOException("Journal is not open");
+        }
+        LedgerStore parsed = new LedgerStore();
+        LedgerCsvParser parser = new LedgerCsvParser(parsed);
+        LedgerCsvParser.BlockHandler fullBatch = () -> {
+            if (parsed.size() >= IMPORT_BATCH) {
+                appendBatch(parsed);
+            }
+        };
+        int rows;
+        if (file.equals("-")) {
+            rows = parser.load(System.in, fullBatch);
+        } else {
+            try (InputStream in = Files.newInputStream(Paths.get(file))) {
+                rows = parser.load(in, fullBatch);
+            }
+        }
+        appendBatch(parsed); // The rest
+
+        System.err.println("Imported " + rows + " transactions, skipped " + parser.getMalformedLines() + " malformed lines");
+        return parser.getMalformedLines() == 0 ? EXIT_OK : EXIT_FAILURE;
+    }
+
+    // Append every row of the scratch store to the journal, then to the ledger, and empty the store
+    private void appendBatch(LedgerStore parsed) throws IOException {
+        if (parsed.isEmpty()) {
+            return;
+        }
+        List<Transaction> batch = new ArrayList<>(parsed.size());
+        for (int row = 0; row < parsed.size(); row++) {
+            batch.add(parsed.toTransaction(row));
+        }
+        journal.appendAll(batch); // On disk first, so the ledger never shows rows the file lacks
+        ledger.addAll(batch);
+        parsed.clear();
+    }
+
+    private int report(Map<String, String> options) throws UsageException, IOException {
+        ReportQuery query = new ReportQuery();
+        readDateRange(options, query);
+        if (options.containsKey("vendor")) {
+            query.vendor(options.get("vendor"));
+        }
+        query.sign(parseEnum(ReportQuery.Sign.class, options.getOrDefault("sign", "all"), "--sign"));
+        query.amountBetween(readAmount(options, "min", Long.MIN_VALUE), readAmount(options, "max", Long.MAX_VALUE));
+        query.groupBy(parseEnum(ReportQuery.GroupBy.class, options.getOrDefault("group-by", "none"), "--group-by"));
+
+        loader.load(query.getFromDay(), query.getToDay());
+        ReportEngine.Result result = new ReportEngine(ledger).run(query);
+        printer.begin();
+        printer.println("group\tcount\tsum\tmin\tmax\taverage");
+        for (ReportEngine.Group group : result.groups) {
+            printer.println(formatAggregate(group.label, group.aggregate));
+        }
+        printer.println(formatAggregate("total", result.total));
+        return EXIT_OK;
+    }
+
+    private static String formatAggregate(String label, ReportEngine.Aggregate aggregate) {
+        return label + '\t' + aggregate.getCount() + '\t' + Money.format(aggregate.getSum()) + '\t' + Money.format(aggregate.getMin())
+                + '\t' + Money.format(aggregate.getMax()) + '\t' + Money.format(aggregate.getAverage());
+    }
+
+    private int search(String term, boolean caseSensitive) throws IOException {
+        loadAll();
+        printRows(ledger.search(term, caseSensitive));
+        return EXIT_OK;
+    }
+
+    private int list(Map<String, String> options) throws UsageException, IOException {
+        int offset = readCount(options, "offset", 0);
+        int limit = readCount(options, "limit", -1);
+        SortIndex.Key key = null;
+        if (options.containsKey("sort")) {
+            key = SortIndex.keyOf(options.get("sort"));
+            if (key == null) {
+                throw new UsageException("Unknown sort key: " + options.get("sort"));
+            }
+        }
+        loadAll();
+        printer.setWindow(offset, limit);
+        try {
+            if (key != null) {
+                printRows(ledger.order(key));
+            } else {
+                int size = ledger.getStore().size(); // Insertion order, straight from the store
+                printer.begin();
+                for (int row = 0; row < size; row++) {
+                    if (!printer.row(row, LedgerPrinter.Style.CSV)) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            printer.setWindow(0, -1);
+        }
+        return EXIT_OK;
+    }
+
+    private void printRows(int[] rows) {
+        printer.begin();
+        for (int row : rows) {
+            if (!printer.row(row, LedgerPrinter.Style.CSV)) {
+                break;
+            }
+        }
+    }
+
+    private int totals(Map<String, String> options) throws UsageException, IOException {
+        ReportQuery range = new ReportQuery();
+        readDateRange(options, range);
+        TotalsIndex.PeriodTotals totals;
+        if (partitions != null) {
+            totals = partitions.totals(range.getFromDay(), range.getToDay()); // Mostly from the manifest
+        } else {
+            loadAll();
+            totals = ledger.read(() -> range.hasDateRange()
+                    ? ledger.getTotals().getRangeTotals(range.getFromDay(), range.getToDay())
+                    : ledger.getTotals().getTotals());
+        }
+        printer.begin();
+        printer.println("income\t" + Money.format(totals.income));
+        printer.println("expenses\t" + Money.format(totals.expenses));
+        printer.println("net\t" + Money.format(totals.income + totals.expenses));
+        return EXIT_OK;
+    }
+
+    private int snapshot() throws IOException {
+        if (partitions != null) {
+            throw new IOException("Snapshots are only used with a single " + csvFile);
+        }
+        loadAll();
+        LedgerSnapshot.write(ledger.getStore(), snapshotFile, csvFile);
+        System.err.println("Snapshot written to " + snapshotFile);
+        return EXIT_OK;
+    }
+
+    private int migrate() throws IOException {
+        if (partitions != null) {
+            throw new IOException("The ledger is already partitioned in " + partitionDirectory);
+        }
+        journal.close(); // Nothing may be appended to the flat file while it is split up
+        int rows = LedgerPartitions.migrate(csvFile, partitionDirectory);
+        System.err.println("Migrated " + rows + " transactions into " + partitionDirectory
+                + "; " + csvFile + " is no longer used and can be archived");
+        return EXIT_OK;
+    }
+
+    private int archive(Map<String, String> options) throws UsageException, IOException {
+        if (partitions == null) {
+            throw new IOException("Only a partitioned ledger can be archived; run migrate first");
+        }
+        int beforeYear = DateTimeCodec.year(DateTimeCodec.today());
+        if (options.containsKey("before")) {
+            try {
+                beforeYear = Integer.parseInt(options.get("before"));
+            } catch (NumberFormatException e) {
+                throw new UsageException("Invalid year for --before: " + options.get("before"));
+            }
+        }
+        int rows = partitions.archive(beforeYear, ForkJoinPool.commonPool());
+        long bytes = 0;
+        for (LedgerArchive archive : partitions.getArchives()) {
+            bytes += Files.size(archive.getFile());
+        }
+        System.err.println("Archived " + rows + " transactions dated before " + beforeYear + "; "
+                + partitions.getArchives().size() + " archives, " + bytes + " bytes in total");
+        return EXIT_OK;
+    }
+
+    private int stats() throws IOException {
+        if (!Metrics.ENABLED) {
+            throw new IOException("Metrics are turned off (-Dledger.metrics=false)");
+        }
+        loadAll();
+        printer.begin();
+        for (String line : statsLines()) {
+            printer.println(line);
+        }
+        return EXIT_OK;
+    }
+
+    // Metrics and cache counters, tab-separated
+    private List<String> statsLines() {
+        List<String> lines = new ArrayList<>();
+        for (String[] line : Metrics.table()) {
+            lines.add(String.join("\t", line));
+        }
+        for (String[] line : Metrics.cacheTable(ledger.getCache())) {
+            lines.add(String.join("\t", line));
+        }
+        return lines;
+    }
+
+    // Serve the HTTP API until the process is stopped; appends go through the open journal
+    private int serve(Map<String, String> options) throws UsageException, IOException {
+        if (journal == null) {
+            throw new IOException("Journal is not open");
+        }
+        String host = options.getOrDefault("host", "localhost");
+        int port = readCount(options, "port", DEFAULT_PORT);
+        loadAll();
+        LedgerHttpServer server = new LedgerHttpServer(ledger, journal, new ReportEngine(ledger), new InetSocketAddress(host, port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1))); // Let running requests finish
+        server.start();
+        System.err.println("Serving " + ledger.getStore().size() + " transactions on http://" + host + ":"
+                + server.getAddress().getPort() + "/ (Ctrl+C to stop)");
+        try {
+            server.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return EXIT_OK;
+    }
+
+    private void loadAll() throws IOException {
+        loader.load(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    // Apply --from and --to; either may be left out for an open-ended range
+    private static void readDateRange(Map<String, String> options, ReportQuery query) throws UsageException {
+        if (options.containsKey("from") || options.containsKey("to")) {
+            query.between(readDate(options, "from", query.getFromDay()), readDate(options, "to", query.getToDay()));
+        }
+    }
+
+    private static int readDate(Map<String, String> options, String name, int missing) throws UsageException {
+        String text = options.get(name);
+        if (text == null) {
+            return missing;
+        }
+        int day = DateTimeCodec.parseDate(text);
+        if (day == DateTimeCodec.INVALID) {
+            throw new UsageException("Invalid date for --" + name + ": " + text + " (expected yyyy-MM-dd)");
+        }
+        return day;
+    }
+
+    private static long readAmount(Map<String, String> options, String name, long missing) throws UsageException {
+        String text = options.get(name);
+        if (text == null) {
+            return missing;
+        }
+        long cents = Money.parse(text);
+        if (cents == Money.INVALID) {
+            throw new UsageException("Invalid amount for --" + name + ": " + text);
+        }
+        return cents;
+    }
+
+    private static int readCount(Map<String, String> options, String name, int missing) throws UsageException {
+        String text = options.get(name);
+        if (text == null) {
+            return missing;
+        }
+        try {
+            int value = Integer.parseInt(text);
+            if (value < 0) {
+                throw new NumberFormatException();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new UsageException("Invalid number for --" + name + ": " + text);
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String text, String option) throws UsageException {
+        for (E value : type.getEnumConstants()) {
+            if (value.name().equalsIgnoreCase(text)) {
+                return value;
+            }
+        }
+        throw new UsageException("Invalid value for " + option + ": " + text);
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: java org.ps.Main <command> [options]");
+        System.err.println("  import <file | ->");
+        System.err.println("  report [--from yyyy-MM-dd] [--to yyyy-MM-dd] [--vendor text] [--sign all|income|expenses]");
+        System.err.println("         [--min amount] [--max amount] [--group-by none|day|week|month|year|vendor]");
+        System.err.println("  search <term> [--case-sensitive]");
+        System.err.println("  list [--offset N] [--limit N] [--sort date|time|amount|vendor|description]");
+        System.err.println("  totals [--from yyyy-MM-dd] [--to yyyy-MM-dd]");
+        System.err.println("  snapshot");
+        System.err.println("  migrate");
+        System.err.println("  archive [--before yyyy]");
+        System.err.println("  stats");
+        System.err.println("  serve [--host name] [--port N]");
+        System.err.println("Any command also takes --stats to print its metrics to stderr.");
+    }
+}
@@ -0,0 +1,47 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.util.Arrays;
+
+// Growable list of primitive ints, used for posting lists without boxing every row number
+public class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(4);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Copy of the values as an array
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
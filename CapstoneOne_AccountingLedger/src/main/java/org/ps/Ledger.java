@@ -0,0 +1,190 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+// The ledger: the column store holding every transaction plus the indexes kept over it.
+// Every add goes through here so the indexes stay in step with the rows.
+//
+// The ledger can be shared between threads (CLI, GUI, background views):
+//   - writers take the write lock, so the rows and every index change together
+//   - rows in the store can be read without any lock (see LedgerStore)
+//   - small index reads (totals, per-vendor sums) go through read(), which runs them under an
+//     optimistic read stamp and only falls back to the read lock if a writer got in the way
+//   - index traversals (search postings, the date index, vendor matches) go through readLocked()
+//     and take the shared read lock. Lock-free traversal was the original aim, but those
+//     structures are not safe to walk while a writer changes them. The lock is fair, so a
+//     queued writer holds back new readers and a steady stream of searches cannot starve adds.
+//   - repeated reports and searches are answered from a result cache; adding rows drops only the
+//     cached results those rows could change
+public class Ledger {
+    private final LedgerStore store = new LedgerStore(); // Every transaction, column by column
+    private final TotalsIndex totals = new TotalsIndex(); // Running income/expense totals
+    private final DateIndex dates = new DateIndex(); // Row numbers ordered by date and time
+    private final SearchIndex search = new SearchIndex(); // Substring search over every field
+    private final VendorIndex vendors = new VendorIndex(); // Rows and totals per vendor
+    private final SortIndex sorts = new SortIndex(store, dates); // Display order per sort key, built on first use
+    private final ResultCache cache = new ResultCache(Long.getLong("ledger.cacheBytes", 64L << 20)); // Recent report and search results
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+    private final StampedLock version = new StampedLock(); // Write-locked inside every write, for optimistic reads
+    private int cachedRows; // Rows the cache has already been invalidated for
+
+    // Add a transaction and update the indexes, returning its row number
+    public int add(Transaction transaction) {
+        long stamp = writeLock();
+        try {
+            int row = store.add(transaction);
+            updateIndexes();
+            return row;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    // Add several transactions at once; readers see either none or all of them in the indexes
+    public void addAll(List<Transaction> transactions) {
+        long stamp = writeLock();
+        try {
+            for (Transaction transaction : transactions) {
+                store.add(transaction);
+            }
+            updateIndexes();
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    // Bring the indexes up to date after rows were loaded straight into the store
+    public void refreshIndexes() {
+        long stamp = writeLock();
+        try {
+            updateIndexes();
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private long writeLock() {
+        lock.writeLock().lock();
+        return version.writeLock(); // Never contended: writers already hold the write lock
+    }
+
+    private void unlockWrite(long stamp) {
+        version.unlockWrite(stamp);
+        lock.writeLock().unlock();
+    }
+
+    private void updateIndexes() {
+        totals.update(store);
+        dates.update(store);
+        search.update(store);
+        vendors.update(store);
+        cache.invalidate(store, cachedRows, store.size());
+        cachedRows = store.size();
+    }
+
+    // Run a short query against the indexes, such as reading a total. The query must only read; it
+    // may run more than once, and may see an index mid-update before validation rejects the result.
+    public <T> T read(Supplier<T> query) {
+        long stamp = version.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = query.get();
+                if (version.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Saw an index in the middle of an update; run again under the read lock
+            }
+        }
+        return readLocked(query);
+    }
+
+    // Run a query that walks an index under the read lock. Readers still run side by side; a
+    // writer waits for the readers that were already running, and new readers queue behind it.
+    // A thread that already holds the read lock may call this again.
+    public <T> T readLocked(Supplier<T> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Rows in the order of the given sort key. The sort index caches what it builds, so this
+    // always takes the read lock instead of reading optimistically.
+    public int[] order(SortIndex.Key key) {
+        return readLocked(() -> {
+            synchronized (sorts) { // Readers may share the read lock; the cache allows one builder
+                return sorts.order(key);
+            }
+        });
+    }
+
+    // Rows dated fromDay to toDay (inclusive), in date and time order. Cached; do not modify the array.
+    public int[] rowsBetween(int fromDay, int toDay) {
+        return cache.get(new ResultCache.DateRangeKey(fromDay, toDay), () -> readLocked(() -> dates.rowsBetween(fromDay, toDay)));
+    }
+
+    // Rows matching the search term, in row order. Cached; do not modify the array.
+    public int[] search(String searchTerm, boolean caseSensitive) {
+        return cache.get(new ResultCache.SearchKey(searchTerm, caseSensitive), Metrics.SEARCH, () -> {
+            Metrics.OperationEvent event = Metrics.SEARCH.begin();
+            int[] searched = new int[1];
+            int[] rows = readLocked(() -> {
+                searched[0] = store.size(); // The index covers every row
+                return search.search(searchTerm, caseSensitive);
+            });
+            Metrics.SEARCH.end(event, searched[0], 0);
+            return rows;
+        });
+    }
+
+    public LedgerStore getStore() {
+        return store;
+    }
+
+    public TotalsIndex getTotals() {
+        return totals;
+    }
+
+    public DateIndex getDates() {
+        return dates;
+    }
+
+    public SearchIndex getSearch() {
+        return search;
+    }
+
+    public VendorIndex getVendors() {
+        return vendors;
+    }
+
+    public ResultCache getCache() {
+        return cache;
+    }
+
+    // Remove every transaction and reset the indexes
+    public void clear() {
+        long stamp = writeLock();
+        try {
+            store.clear();
+            totals.clear();
+            dates.clear();
+            search.clear();
+            vendors.clear();
+            cache.clear();
+            cachedRows = 0;
+            synchronized (sorts) {
+                sorts.clear();
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+}
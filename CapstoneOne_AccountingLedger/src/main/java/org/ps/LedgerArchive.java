@@ -0,0 +1,325 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Compressed, read-only file for closed periods of the ledger.
+//
+// Rows are stored in the transactions.csv layout, cut into blocks of at most BLOCK_ROWS rows that
+// never span two months, and each block is deflated on its own. An index at the end of the file
+// lists every block with its position, row count, first and last date, income and expenses, so a
+// range query only inflates the blocks it overlaps and totals of blocks inside the range need no
+// block at all.
+//
+// Layout: block bytes | index (INDEX_ENTRY_SIZE per block) | block count | index position | MAGIC
+public final class LedgerArchive {
+    private static final int MAGIC = 0x4C475A31; // "LGZ1"
+    private static final int BLOCK_ROWS = 1 << 14; // Rows per block, about 700 KB of text
+    private static final int INDEX_ENTRY_SIZE = 8 + 4 * 5 + 8 * 2;
+    private static final int TRAILER_SIZE = 4 + 8 + 4;
+
+    // Index entry of one block
+    public static final class Block {
+        private final long position;
+        private final int compressedLength;
+        private final int length; // Bytes of text once inflated
+        private final int rows;
+        private final int firstDay;
+        private final int lastDay;
+        private final long income;
+        private final long expenses; // Zero or negative
+
+        Block(long position, int compressedLength, int length, int rows, int firstDay, int lastDay, long income, long expenses) {
+            this.position = position;
+            this.compressedLength = compressedLength;
+            this.length = length;
+            this.rows = rows;
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.income = income;
+            this.expenses = expenses;
+        }
+
+        // True if the block has rows dated fromDay to toDay (inclusive)
+        public boolean overlaps(int fromDay, int toDay) {
+            return lastDay >= fromDay && firstDay <= toDay;
+        }
+
+        // True if every row of the block is dated fromDay to toDay (inclusive)
+        public boolean within(int fromDay, int toDay) {
+            return firstDay >= fromDay && lastDay <= toDay;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getFirstDay() {
+            return firstDay;
+        }
+
+        public int getLastDay() {
+            return lastDay;
+        }
+
+        public long getIncome() {
+            return income;
+        }
+
+        public long getExpenses() {
+            return expenses;
+        }
+
+        public int getCompressedLength() {
+            return compressedLength;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    // A block compressed in memory, waiting to be written
+    private static final class Compressed {
+        final byte[] bytes;
+        final int length;
+        final int rows;
+        int firstDay = Integer.MAX_VALUE;
+        int lastDay = Integer.MIN_VALUE;
+        long income;
+        long expenses;
+
+        Compressed(byte[] bytes, int length, int rows) {
+            this.bytes = bytes;
+            this.length = length;
+            this.rows = rows;
+        }
+    }
+
+    private final Path file;
+    private final List<Block> blocks;
+
+    private LedgerArchive(Path file, List<Block> blocks) {
+        this.file = file;
+        this.blocks = blocks;
+    }
+
+    // Read the index of an archive; no block is inflated
+    public static LedgerArchive open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TRAILER_SIZE) {
+                throw new IOException(file + " is not a ledger archive");
+            }
+            ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+            int count = trailer.getInt();
+            long indexPosition = trailer.getLong();
+            if (trailer.getInt() != MAGIC || count < 0
+                    || indexPosition + (long) count * INDEX_ENTRY_SIZE != size - TRAILER_SIZE) {
+                throw new IOException(file + " is not a complete ledger archive");
+            }
+            ByteBuffer index = read(channel, indexPosition, count * INDEX_ENTRY_SIZE);
+            List<Block> blocks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                blocks.add(new Block(index.getLong(), index.getInt(), index.getInt(), index.getInt(), index.getInt(),
+                        index.getInt(), index.getLong(), index.getLong()));
+            }
+            return new LedgerArchive(file, blocks);
+        }
+    }
+
+    // Write the given rows of the store to a new archive file and force it to disk. Rows are
+    // grouped by month, keeping their order within a month; blocks are compressed in parallel.
+    public static LedgerArchive write(LedgerStore store, int[] rows, Path file, ForkJoinPool pool) throws IOException {
+        List<ForkJoinTask<Compressed>> tasks = new ArrayList<>();
+        for (int[] month : byMonth(store, rows)) {
+            for (int from = 0; from < month.length; from += BLOCK_ROWS) {
+                int start = from;
+                int end = Math.min(from + BLOCK_ROWS, month.length);
+                tasks.add(pool.submit(() -> compress(store, month, start, end)));
+            }
+        }
+
+        List<Block> blocks = new ArrayList<>(tasks.size());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            for (ForkJoinTask<Compressed> task : tasks) {
+                Compressed block = task.join();
+                writeFully(channel, ByteBuffer.wrap(block.bytes));
+                blocks.add(new Block(position, block.bytes.length, block.length, block.rows, block.firstDay,
+                        block.lastDay, block.income, block.expenses));
+                position += block.bytes.length;
+            }
+            ByteBuffer index = ByteBuffer.allocate(blocks.size() * INDEX_ENTRY_SIZE + TRAILER_SIZE);
+            for (Block block : blocks) {
+                index.putLong(block.position).putInt(block.compressedLength).putInt(block.length).putInt(block.rows)
+                        .putInt(block.firstDay).putInt(block.lastDay).putLong(block.income).putLong(block.expenses);
+            }
+            index.putInt(blocks.size()).putLong(position).putInt(MAGIC);
+            index.flip();
+            writeFully(channel, index);
+            channel.force(true);
+        }
+        return new LedgerArchive(file, blocks);
+    }
+
+    // Inflate every block overlapping fromDay to toDay into the target store, in parallel. Rows of
+    // those blocks outside the range are loaded too. Returns the number of rows added.
+    public int load(LedgerStore target, int fromDay, int toDay, ForkJoinPool pool) throws IOException {
+        int before = target.size();
+        List<ForkJoinTask<LedgerStore>> tasks = new ArrayList<>();
+        for (Block block : blocks) {
+            if (block.overlaps(fromDay, toDay)) {
+                tasks.add(pool.submit(() -> inflate(block)));
+            }
+        }
+        for (ForkJoinTask<LedgerStore> task : tasks) {
+            target.appendAll(task.join());
+        }
+        return target.size() - before;
+    }
+
+    // Income and expenses of the rows dated fromDay to toDay (inclusive). Blocks inside the range
+    // are answered by the index; only the ones cut by the range are inflated.
+    public TotalsIndex.PeriodTotals totals(int fromDay, int toDay) throws IOException {
+        long income = 0;
+        long expenses = 0;
+        for (Block block : blocks) {
+            if (!block.overlaps(fromDay, toDay)) {
+                continue;
+            }
+            if (block.within(fromDay, toDay)) {
+                income += block.income;
+                expenses += block.expenses;
+                continue;
+            }
+            TotalsIndex.PeriodTotals cut = TotalsIndex.scan(inflate(block), fromDay, toDay);
+            income += cut.income;
+            expenses += cut.expenses;
+        }
+        return new TotalsIndex.PeriodTotals(income, expenses);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public List<Block> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    public int getRows() {
+        int rows = 0;
+        for (Block block : blocks) {
+            rows += block.rows;
+        }
+        return rows;
+    }
+
+    // Read and inflate one block into a store of its own
+    private LedgerStore inflate(Block block) throws IOException {
+        byte[] text = new byte[block.length];
+        Inflater inflater = new Inflater();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer compressed = read(channel, block.position, block.compressedLength);
+            inflater.setInput(compressed.array(), 0, block.compressedLength);
+            int filled = 0;
+            while (filled < text.length && !inflater.finished()) {
+                int count = inflater.inflate(text, filled, text.length - filled);
+                if (count == 0 && inflater.needsInput()) {
+                    break;
+                }
+                filled += count;
+            }
+            if (filled != text.length) {
+                throw new IOException("Damaged block at " + block.position + " in " + file);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Damaged block at " + block.position + " in " + file, e);
+        } finally {
+            inflater.end();
+        }
+        LedgerStore rows = new LedgerStore();
+        new LedgerCsvParser(rows).parseLines(ByteBuffer.wrap(text), 0, text.length);
+        return rows;
+    }
+
+    // Format rows[from, to) as text and deflate it
+    private static Compressed compress(LedgerStore store, int[] rows, int from, int to) {
+        byte[] text = LedgerCsvWriter.format(store, rows, from, to);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        byte[] out = new byte[Math.max(64, text.length / 4)];
+        int filled = 0;
+        try {
+            deflater.setInput(text);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (filled == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                filled += deflater.deflate(out, filled, out.length - filled);
+            }
+        } finally {
+            deflater.end();
+        }
+        Compressed block = new Compressed(Arrays.copyOf(out, filled), text.length, to - from);
+        for (int i = from; i < to; i++) {
+            int day = store.getEpochDay(rows[i]);
+            long cents = store.getAmountCents(rows[i]);
+            block.firstDay = Math.min(block.firstDay, day);
+            block.lastDay = Math.max(block.lastDay, day);
+            if (cents > 0) {
+                block.income += cents;
+            } else {
+                block.expenses += cents;
+            }
+        }
+        return block;
+    }
+
+    // Split rows into one array per month, in month order
+    private static List<int[]> byMonth(LedgerStore store, int[] rows) {
+        TreeMap<Integer, IntList> months = new TreeMap<>();
+        for (int row : rows) {
+            months.computeIfAbsent(DateTimeCodec.toYearMonthDay(store.getEpochDay(row)) / 100, key -> new IntList()).add(row);
+        }
+        List<int[]> grouped = new ArrayList<>(months.size());
+        for (IntList month : months.values()) {
+            grouped.add(month.toArray());
+        }
+        return grouped;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
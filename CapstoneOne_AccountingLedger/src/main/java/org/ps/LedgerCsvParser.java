@@ -0,0 +1,240 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Byte-level parser for the pipe-delimited transactions file:
+//   date|time|description|vendor|amount
+// Lines are read through one reusable buffer and date, time and amount are decoded straight
+// into primitives. Vendor and description text is only looked up (and, if new, turned into a
+// String) once the rest of the row has been validated.
+public class LedgerCsvParser {
+    private static final int BUFFER_SIZE = 1 << 16; // 64 KB read buffer
+    private static final int INVALID = DateTimeCodec.INVALID; // Marker for a field that did not decode
+    private static final long MIN_CHUNK_SIZE = 8L << 20; // 8 MB, smaller chunks are not worth a task
+    private static final long MAX_CHUNK_SIZE = 1L << 30; // 1 GB, keeps every mapping well under the 2 GB limit
+
+    private final LedgerStore target; // Store that receives the parsed rows
+    private byte[] buffer = new byte[BUFFER_SIZE]; // Reused for every read, grows only for very long lines
+    private int malformedLines; // Number of lines skipped because they could not be parsed
+
+    // Values of the row being parsed
+    private int epochDay;
+    private int secondOfDay;
+    private long amountCents;
+
+    // Called by load(InputStream, BlockHandler) each time a buffer of lines is in the target store
+    public interface BlockHandler {
+        void parsed() throws IOException;
+    }
+
+    public LedgerCsvParser(LedgerStore target) {
+        this.target = target;
+    }
+
+    // Stream a whole file into the target store and return the number of rows added
+    public int load(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return load(in);
+        }
+    }
+
+    // Stream every line of the input into the target store and return the number of rows added
+    public int load(InputStream in) throws IOException {
+        return load(in, () -> { });
+    }
+
+    // Stream the input one buffer at a time, calling handler after each buffer's lines have been
+    // added to the target store. The handler may write them elsewhere and clear the store, so a
+    // file of any size is parsed in the memory of one block. Returns the number of rows parsed.
+    public int load(InputStream in, BlockHandler handler) throws IOException {
+        int rows = 0;
+        ByteBuffer view = ByteBuffer.wrap(buffer);
+        int filled = 0; // Bytes currently in the buffer
+        int read;
+        while ((read = in.read(buffer, filled, buffer.length - filled)) != -1) {
+            filled += read;
+            int before = target.size();
+            int consumed = parseLines(view, 0, filled);
+            if (consumed == 0 && filled == buffer.length) {
+                // A single line is longer than the buffer, so make room for the rest of it
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                view = ByteBuffer.wrap(buffer);
+                continue;
+            }
+            System.arraycopy(buffer, consumed, buffer, 0, filled - consumed); // Keep the partial last line
+            filled -= consumed;
+            rows += target.size() - before;
+            handler.parsed();
+        }
+        if (filled > 0) {
+            int before = target.size();
+            parseLine(view, 0, filled); // Last line without a trailing newline
+            rows += target.size() - before;
+            handler.parsed();
+        }
+        return rows;
+    }
+
+    // Memory-map the file, parse newline-aligned chunks of it in parallel on the fork-join pool
+    // and append the results to the target store in file order. Returns the number of rows added.
+    public static int loadParallel(Path path, LedgerStore target, ForkJoinPool pool) throws IOException {
+        int before = target.size();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, fileSize / (pool.getParallelism() * 4L));
+            chunkSize = Math.min(chunkSize, MAX_CHUNK_SIZE);
+
+            // Cut the file into chunks that each start right after a newline
+            List<long[]> chunks = new ArrayList<>();
+            long start = 0;
+            while (start < fileSize) {
+                long end = start + chunkSize >= fileSize ? fileSize : nextLineStart(channel, start + chunkSize, fileSize);
+                chunks.add(new long[]{start, end});
+                start = end;
+            }
+
+            // Parse every chunk into its own store, then merge them back in order
+            List<ForkJoinTask<LedgerStore>> tasks = new ArrayList<>();
+            for (long[] chunk : chunks) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]);
+                tasks.add(pool.submit(() -> parseChunk(mapped)));
+            }
+            for (ForkJoinTask<LedgerStore> task : tasks) {
+                target.appendAll(task.join());
+            }
+        }
+        return target.size() - before;
+    }
+
+    // Parse one mapped chunk into a new store
+    private static LedgerStore parseChunk(ByteBuffer chunk) {
+        LedgerStore local = new LedgerStore();
+        LedgerCsvParser parser = new LedgerCsvParser(local);
+        int consumed = parser.parseLines(chunk, 0, chunk.limit());
+        if (consumed < chunk.limit()) {
+            parser.parseLine(chunk, consumed, chunk.limit()); // Last line of the file without a newline
+        }
+        return local;
+    }
+
+    // Find the position just after the first newline at or after position
+    private static long nextLineStart(FileChannel channel, long position, long fileSize) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (position < fileSize) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return fileSize;
+    }
+
+    // Parse every complete line in buffer[from, to) and return the position just after the last newline
+    public int parseLines(ByteBuffer buffer, int from, int to) {
+        int lineStart = from;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                parseLine(buffer, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        return lineStart;
+    }
+
+    // Parse one line (without its newline) and add it to the target store if it is valid
+    public boolean parseLine(ByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (isBlank(buffer, start, end)) {
+            return false; // Empty lines are silently ignored
+        }
+
+        // Locate the four pipes that separate the five fields
+        int p1 = indexOf(buffer, '|', start, end);
+        int p2 = p1 < 0 ? -1 : indexOf(buffer, '|', p1 + 1, end);
+        int p3 = p2 < 0 ? -1 : indexOf(buffer, '|', p2 + 1, end);
+        int p4 = p3 < 0 ? -1 : indexOf(buffer, '|', p3 + 1, end);
+        if (p4 < 0 || indexOf(buffer, '|', p4 + 1, end) >= 0) {
+            return skip(buffer, start, end);
+        }
+
+        epochDay = DateTimeCodec.parseDate(buffer, trimStart(buffer, start, p1), trimEnd(buffer, start, p1));
+        secondOfDay = DateTimeCodec.parseTime(buffer, trimStart(buffer, p1 + 1, p2), trimEnd(buffer, p1 + 1, p2));
+        amountCents = Money.parse(buffer, trimStart(buffer, p4 + 1, end), trimEnd(buffer, p4 + 1, end));
+        if (epochDay == INVALID || secondOfDay == INVALID || amountCents == Money.INVALID) {
+            return skip(buffer, start, end);
+        }
+
+        // The row is valid, so only now look up (or create) the description and vendor text
+        int descriptionStart = trimStart(buffer, p2 + 1, p3);
+        int vendorStart = trimStart(buffer, p3 + 1, p4);
+        int descriptionId = target.getDescriptions().intern(buffer, descriptionStart,
+                trimEnd(buffer, p2 + 1, p3) - descriptionStart);
+        int vendorId = target.getVendors().intern(buffer, vendorStart, trimEnd(buffer, p3 + 1, p4) - vendorStart);
+        target.add(epochDay, secondOfDay, descriptionId, vendorId, amountCents);
+        return true;
+    }
+
+    // Number of lines skipped so far because they were malformed
+    public int getMalformedLines() {
+        return malformedLines;
+    }
+
+    private boolean skip(ByteBuffer buffer, int start, int end) {
+        malformedLines++;
+        byte[] line = new byte[end - start];
+        buffer.get(start, line, 0, line.length);
+        System.out.println("Skipping malformed line: " + new String(line, StandardCharsets.UTF_8));
+        return false;
+    }
+
+    private static int indexOf(ByteBuffer buffer, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(ByteBuffer buffer, int start, int end) {
+        return trimStart(buffer, start, end) == end;
+    }
+
+    private static int trimStart(ByteBuffer buffer, int start, int end) {
+        while (start < end && (buffer.get(start) == ' ' || buffer.get(start) == '\t')) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(ByteBuffer buffer, int start, int end) {
+        while (end > start && (buffer.get(end - 1) == ' ' || buffer.get(end - 1) == '\t')) {
+            end--;
+        }
+        return end;
+    }
+}
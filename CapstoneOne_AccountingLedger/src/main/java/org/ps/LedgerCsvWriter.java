@@ -0,0 +1,114 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Rewrites a whole ledger file safely: the rows are written to a temporary file next to the
+// target, forced to disk and renamed over the target in one step, so a crash leaves either the
+// old file or the new one, never half of each.
+//
+// Rows are formatted in chunks on the fork-join pool (in the transactions.csv layout, amounts with
+// two decimals) while the calling thread writes finished chunks in order through a large direct
+// buffer. Only a few chunks are in flight at a time, so memory stays flat for any ledger size.
+public final class LedgerCsvWriter {
+    private static final int CHUNK_ROWS = 1 << 15; // Rows formatted by one task
+    private static final int WRITE_BUFFER_SIZE = 4 << 20; // 4 MB per write
+
+    private LedgerCsvWriter() {
+    }
+
+    // Replace the target file with every row of the store, in row order. Returns the rows written.
+    public static int write(LedgerStore store, Path target, ForkJoinPool pool) throws IOException {
+        return write(store, null, store.size(), target, pool);
+    }
+
+    // Replace the target file with the given rows of the store, in the given order
+    public static int write(LedgerStore store, int[] rows, Path target, ForkJoinPool pool) throws IOException {
+        return write(store, rows, rows.length, target, pool);
+    }
+
+    // rows is null for rows 0 to count - 1
+    private static int write(LedgerStore store, int[] rows, int count, Path target, ForkJoinPool pool) throws IOException {
+        Metrics.OperationEvent event = Metrics.SAVE.begin();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        long bytes;
+        int maxInFlight = pool.getParallelism() * 2;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            ArrayDeque<ForkJoinTask<byte[]>> inFlight = new ArrayDeque<>();
+            int nextChunk = 0;
+            while (nextChunk < count || !inFlight.isEmpty()) {
+                while (nextChunk < count && inFlight.size() < maxInFlight) {
+                    int from = nextChunk;
+                    int to = Math.min(from + CHUNK_ROWS, count);
+                    inFlight.add(pool.submit(() -> format(store, rows, from, to)));
+                    nextChunk = to;
+                }
+                write(channel, buffer, inFlight.poll().join());
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+            bytes = channel.size();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(target.toAbsolutePath().getParent());
+        Metrics.SAVE.end(event, count, bytes);
+        return count;
+    }
+
+    // Format rows[from, to) (or rows from to to - 1) as UTF-8 lines
+    static byte[] format(LedgerStore store, int[] rows, int from, int to) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((to - from) * 64);
+        LedgerPrinter printer = new LedgerPrinter(store, Channels.newChannel(bytes), StandardCharsets.UTF_8);
+        for (int i = from; i < to; i++) {
+            printer.row(rows == null ? i : rows[i], LedgerPrinter.Style.CSV);
+        }
+        printer.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            int count = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, count);
+            offset += count;
+            if (!buffer.hasRemaining()) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+    }
+
+    // Make the rename itself durable. Not every platform can open a directory; there it is skipped.
+    static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // The file itself is on disk already
+        }
+    }
+}
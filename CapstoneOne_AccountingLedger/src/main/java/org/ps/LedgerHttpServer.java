@@ -0,0 +1,713 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// JSON over HTTP for many clients at once, on the JDK's built-in server.
+//
+//   POST /transactions                     Add one transaction (an object) or a batch (an array)
+//   GET  /transactions                     Every transaction; from, to, sort, offset, limit
+//   GET  /search?q=text                    Matching transactions; case-sensitive, offset, limit
+//   GET  /totals                           Income, expenses and net; from, to
+//   GET  /reports                          Grouped report; from, to, vendor, sign, min, max, group-by,
+//                                          or preset=month-to-date|previous-month|year-to-date|previous-year
+//   GET  /stats                            Operation metrics and result cache counters
+//
+// A transaction is {"date": "yyyy-MM-dd", "time": "HH:mm:ss", "description": ..., "vendor": ...,
+// "amount": 12.34}; time defaults to now. Errors come back as {"error": ...} with status 400, 404,
+// 405, 413 or 500.
+//
+// Every request runs on its own virtual thread, so thousands of slow clients cost little more than
+// their sockets. They share the one in-memory ledger: reads share its read lock (totals read
+// optimistically) and result cache, adds go to the journal first (group-committed with the other clients' adds)
+// and then to the ledger in one batch. Row listings are streamed as a chunked JSON array through a
+// fixed-size buffer, so a response of millions of rows needs no more memory than a short one.
+public class LedgerHttpServer {
+    private static final int BACKLOG = 4096; // Connections waiting to be accepted
+    private static final int STREAM_BUFFER_SIZE = 1 << 16; // Bytes per chunk of a streamed response
+    private static final int MAX_BODY_SIZE = 64 << 20; // Largest batch accepted, 64 MB of JSON
+
+    private final Ledger ledger;
+    private final TransactionLog journal;
+    private final ReportEngine reports;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    // A request the server cannot answer; sent back as {"error": message}
+    private static final class RequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, Map<String, String> parameters) throws IOException, RequestException;
+    }
+
+    public LedgerHttpServer(Ledger ledger, TransactionLog journal, ReportEngine reports, InetSocketAddress address) throws IOException {
+        this.ledger = ledger;
+        this.journal = journal;
+        this.reports = reports;
+        this.server = HttpServer.create(address, BACKLOG);
+        server.setExecutor(executor);
+        route("/transactions", this::transactions);
+        route("/search", this::search);
+        route("/totals", this::totals);
+        route("/reports", this::report);
+        route("/stats", this::stats);
+        route("/", (exchange, parameters) -> {
+            throw new RequestException(404, "Not found: " + exchange.getRequestURI().getPath());
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // Stop accepting requests and give the running ones up to delaySeconds to finish
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        stopped.countDown();
+    }
+
+    // Block until the server is stopped
+    public void await() throws InterruptedException {
+        stopped.await();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void route(String path, Handler handler) {
+        server.createContext(path, exchange -> handle(exchange, path, handler));
+    }
+
+    private void handle(HttpExchange exchange, String path, Handler handler) {
+        try {
+            if (!exchange.getRequestURI().getPath().equals(path)) {
+                throw new RequestException(404, "Not found: " + exchange.getRequestURI().getPath());
+            }
+            handler.handle(exchange, parameters(exchange.getRequestURI().getRawQuery()));
+        } catch (RequestException e) {
+            sendError(exchange, e.status, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            sendError(exchange, 500, String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // POST adds, GET lists
+    private void transactions(HttpExchange exchange, Map<String, String> parameters) throws IOException, RequestException {
+        if (exchange.getRequestMethod().equals("POST")) {
+            addTransactions(exchange);
+            return;
+        }
+        requireGet(exchange);
+        int offset = readCount(parameters, "offset", 0);
+        int limit = readCount(parameters, "limit", Integer.MAX_VALUE);
+        if (parameters.containsKey("from") || parameters.containsKey("to")) {
+            int[] rows = ledger.rowsBetween(readDate(parameters, "from", Integer.MIN_VALUE), readDate(parameters, "to", Integer.MAX_VALUE));
+            streamRows(exchange, rows, rows.length, offset, limit);
+        } else if (parameters.containsKey("sort")) {
+            SortIndex.Key key = SortIndex.keyOf(parameters.get("sort"));
+            if (key == null) {
+                throw new RequestException(400, "Unknown sort key: " + parameters.get("sort"));
+            }
+            int[] rows = ledger.order(key);
+            streamRows(exchange, rows, rows.length, offset, limit);
+        } else {
+            streamRows(exchange, null, ledger.getStore().size(), offset, limit); // Insertion order, straight from the store
+        }
+    }
+
+    private void addTransactions(HttpExchange exchange) throws IOException, RequestException {
+        Object body = new JsonReader(readBody(exchange)).readDocument();
+        List<Transaction> transactions = new ArrayList<>();
+        if (body instanceof List) {
+            for (Object item : (List<?>) body) {
+                transactions.add(toTransaction(item, transactions.size()));
+            }
+        } else {
+            transactions.add(toTransaction(body, 0));
+        }
+        if (!transactions.isEmpty()) {
+            journal.appendAll(transactions); // On disk first, so the ledger never shows rows the file lacks
+            ledger.addAll(transactions);
+        }
+        sendJson(exchange, 201, "{\"added\":" + transactions.size() + "}");
+    }
+
+    private void search(HttpExchange exchange, Map<String, String> parameters) throws IOException, RequestException {
+        requireGet(exchange);
+        String term = parameters.get("q");
+        if (term == null || term.isEmpty()) {
+            throw new RequestException(400, "Missing search term q");
+        }
+        int[] rows = ledger.search(term, Boolean.parseBoolean(parameters.get("case-sensitive")));
+        streamRows(exchange, rows, rows.length, readCount(parameters, "offset", 0), readCount(parameters, "limit", Integer.MAX_VALUE));
+    }
+
+    private void totals(HttpExchange exchange, Map<String, String> parameters) throws IOException, RequestException {
+        requireGet(exchange);
+        int fromDay = readDate(parameters, "from", Integer.MIN_VALUE);
+        int toDay = readDate(parameters, "to", Integer.MAX_VALUE);
+        boolean ranged = parameters.containsKey("from") || parameters.containsKey("to");
+        TotalsIndex.PeriodTotals totals = ledger.read(() -> ranged
+                ? ledger.getTotals().getRangeTotals(fromDay, toDay)
+                : ledger.getTotals().getTotals());
+        sendJson(exchange, 200, "{\"income\":" + Money.format(totals.income) + ",\"expenses\":" + Money.format(totals.expenses)
+                + ",\"net\":" + Money.format(totals.income + totals.expenses) + "}");
+    }
+
+    private void report(HttpExchange exchange, Map<String, String> parameters) throws IOException, RequestException {
+        requireGet(exchange);
+        ReportQuery query = readQuery(parameters);
+        ReportEngine.Result result = reports.run(query);
+        StringBuilder json = new StringBuilder("{\"groups\":[");
+        for (int i = 0; i < result.groups.size(); i++) {
+            ReportEngine.Group group = result.groups.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            appendAggregate(json, group.label, group.aggregate);
+        }
+        json.append("],\"total\":");
+        appendAggregate(json, "total", result.total);
+        sendJson(exchange, 200, json.append('}').toString());
+    }
+
+    private void stats(HttpExchange exchange, Map<String, String> parameters) throws IOException, RequestException {
+        requireGet(exchange);
+        StringBuilder json = new StringBuilder("{\"enabled\":").append(Metrics.ENABLED).append(",\"operations\":[");
+        List<Metrics.Operation> operations = Metrics.operations();
+        for (int i = 0; i < operations.size(); i++) {
+            Metrics.Operation operation = operations.get(i);
+            json.append(i > 0 ? ",{" : "{").append("\"operation\":");
+            appendString(json, operation.getName());
+            json.append(",\"count\":").append(operation.getCount())
+                    .append(",\"hits\":").append(operation.getHits())
+                    .append(",\"totalNanos\":").append(operation.getNanos())
+                    .append(",\"p50Nanos\":").append(operation.percentileNanos(0.5))
+                    .append(",\"p99Nanos\":").append(operation.percentileNanos(0.99))
+                    .append(",\"maxNanos\":").append(operation.getMaxNanos())
+                    .append(",\"rows\":").append(operation.getRows())
+                    .append(",\"bytes\":").append(operation.getBytes()).append('}');
+        }
+        ResultCache cache = ledger.getCache();
+        json.append("],\"cache\":{\"hits\":").append(cache.getHits())
+                .append(",\"misses\":").append(cache.getMisses())
+                .append(",\"evictions\":").append(cache.getEvictions())
+                .append(",\"invalidations\":").append(cache.getInvalidations())
+                .append(",\"entries\":").append(cache.size())
+                .append(",\"bytes\":").append(cache.getBytes()).append("}}");
+        sendJson(exchange, 200, json.toString());
+    }
+
+    // Stream rows[offset, offset + limit) (or store rows when rows is null) as a JSON array,
+    // one chunk per buffer
+    private void streamRows(HttpExchange exchange, int[] rows, int count, int offset, int limit) throws IOException {
+        LedgerStore store = ledger.getStore();
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0); // Chunked
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8),
+                STREAM_BUFFER_SIZE)) {
+            out.write('[');
+            long end = Math.min(count, (long) offset + limit);
+            StringBuilder row = new StringBuilder(128);
+            for (int i = offset; i < end; i++) {
+                row.setLength(0);
+                appendRow(row, store, rows == null ? i : rows[i]);
+                if (i > offset) {
+                    out.write(',');
+                }
+                out.append(row);
+            }
+            out.write(']');
+        }
+    }
+
+    private static void appendRow(StringBuilder json, LedgerStore store, int row) {
+        json.append("{\"date\":\"").append(store.getDate(row)).append("\",\"time\":\"").append(store.getTime(row)).append("\",\"description\":");
+        appendString(json, store.getDescription(row));
+        json.append(",\"vendor\":");
+        appendString(json, store.getVendor(row));
+        json.append(",\"amount\":").append(Money.format(store.getAmountCents(row))).append('}');
+    }
+
+    private static void appendAggregate(StringBuilder json, String label, ReportEngine.Aggregate aggregate) {
+        json.append("{\"label\":");
+        appendString(json, label);
+        json.append(",\"count\":").append(aggregate.getCount());
+        if (aggregate.getCount() > 0) {
+            json.append(",\"sum\":").append(Money.format(aggregate.getSum()))
+                    .append(",\"min\":").append(Money.format(aggregate.getMin()))
+                    .append(",\"max\":").append(Money.format(aggregate.getMax()))
+                    .append(",\"average\":").append(Money.format(aggregate.getAverage()));
+        }
+        json.append('}');
+    }
+
+    private static void appendString(StringBuilder json, String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        if (exchange.getResponseCode() != -1) {
+            return; // Failed while streaming; closing the exchange cuts the response short
+        }
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        try {
+            sendJson(exchange, status, json.append('}').toString());
+        } catch (IOException e) {
+            // The client is gone
+        }
+    }
+
+    private static void requireGet(HttpExchange exchange) throws RequestException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            throw new RequestException(405, "Method not allowed: " + exchange.getRequestMethod());
+        }
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException, RequestException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_SIZE + 1);
+            if (body.length > MAX_BODY_SIZE) {
+                throw new RequestException(413, "Request body is larger than " + MAX_BODY_SIZE + " bytes");
+            }
+            return body;
+        }
+    }
+
+    private static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static ReportQuery readQuery(Map<String, String> parameters) throws RequestException {
+        String preset = parameters.get("preset");
+        ReportQuery query;
+        if (preset == null) {
+            query = new ReportQuery();
+            if (parameters.containsKey("from") || parameters.containsKey("to")) {
+                query.between(readDate(parameters, "from", query.getFromDay()), readDate(parameters, "to", query.getToDay()));
+            }
+        } else {
+            int today = DateTimeCodec.today();
+            switch (preset) {
+                case "month-to-date":
+                    query = ReportQuery.monthToDate(today);
+                    break;
+                case "previous-month":
+                    query = ReportQuery.previousMonth(today);
+                    break;
+                case "year-to-date":
+                    query = ReportQuery.yearToDate(today);
+                    break;
+                case "previous-year":
+                    query = ReportQuery.previousYear(today);
+                    break;
+                default:
+                    throw new RequestException(400, "Unknown preset: " + preset);
+            }
+        }
+        if (parameters.containsKey("vendor")) {
+            query.vendor(parameters.get("vendor"));
+        }
+        query.sign(readEnum(ReportQuery.Sign.class, parameters, "sign", ReportQuery.Sign.ALL));
+        query.amountBetween(readAmount(parameters, "min", Long.MIN_VALUE), readAmount(parameters, "max", Long.MAX_VALUE));
+        query.groupBy(readEnum(ReportQuery.GroupBy.class, parameters, "group-by", ReportQuery.GroupBy.NONE));
+        return query;
+    }
+
+    private static int readDate(Map<String, String> parameters, String name, int missing) throws RequestException {
+        String text = parameters.get(name);
+        if (text == null) {
+            return missing;
+        }
+        int day = DateTimeCodec.parseDate(text);
+        if (day == DateTimeCodec.INVALID) {
+            throw new RequestException(400, "Invalid date for " + name + ": " + text + " (expected yyyy-MM-dd)");
+        }
+        return day;
+    }
+
+    private static long readAmount(Map<String, String> parameters, String name, long missing) throws RequestException {
+        String text = parameters.get(name);
+        if (text == null) {
+            return missing;
+        }
+        long cents = Money.parse(text);
+        if (cents == Money.INVALID) {
+            throw new RequestException(400, "Invalid amount for " + name + ": " + text);
+        }
+        return cents;
+    }
+
+    private static int readCount(Map<String, String> parameters, String name, int missing) throws RequestException {
+        String text = parameters.get(name);
+        if (text == null) {
+            return missing;
+        }
+        try {
+            int value = Integer.parseInt(text);
+            if (value < 0) {
+                throw new NumberFormatException();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Invalid number for " + name + ": " + text);
+        }
+    }
+
+    private static <E extends Enum<E>> E readEnum(Class<E> type, Map<String, String> parameters, String name, E missing)
+            throws RequestException {
+        String text = parameters.get(name);
+        if (text == null) {
+            return missing;
+        }
+        for (E value : type.getEnumConstants()) {
+            if (value.name().equalsIgnoreCase(text)) {
+                return value;
+            }
+        }
+        throw new RequestException(400, "Invalid value for " + name + ": " + text);
+    }
+
+    // Build a transaction from a parsed JSON object, or explain what is wrong with it
+    private static Transaction toTransaction(Object item, int index) throws RequestException {
+        if (!(item instanceof Map)) {
+            throw new RequestException(400, "Transaction " + index + " is not an object");
+        }
+        Map<?, ?> fields = (Map<?, ?>) item;
+        int epochDay = DateTimeCodec.parseDate(text(fields, "date", index));
+        Object time = fields.get("time");
+        int secondOfDay = time == null ? DateTimeCodec.nowSecondOfDay() : DateTimeCodec.parseTime(String.valueOf(time));
+        long cents = Money.parse(text(fields, "amount", index));
+        if (epochDay == DateTimeCodec.INVALID || secondOfDay == DateTimeCodec.INVALID || cents == Money.INVALID) {
+            throw new RequestException(400, "Transaction " + index + " has an invalid date, time or amount");
+        }
+        String description = text(fields, "description", index);
+        String vendor = text(fields, "vendor", index);
+        if (description.indexOf('|') >= 0 || vendor.indexOf('|') >= 0 || description.indexOf('\n') >= 0 || vendor.indexOf('\n') >= 0) {
+            throw new RequestException(400, "Transaction " + index + " has a '|' or a line break in its text");
+        }
+        return Transaction.ofCents(epochDay, secondOfDay, description, vendor, cents);
+    }
+
+    private static String text(Map<?, ?> fields, String name, int index) throws RequestException {
+        Object value = fields.get(name);
+        if (value == null) {
+            throw new RequestException(400, "Transaction " + index + " has no " + name);
+        }
+        return String.valueOf(value);
+    }
+
+    // A JSON number kept as its text, so an amount goes to Money.parse exactly as it was sent
+    private static final class JsonNumber {
+        private final String text;
+
+        JsonNumber(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    // Just enough JSON for request bodies: objects, arrays, strings, numbers (as JsonNumber), true,
+    // false and null. Nesting is limited to MAX_DEPTH so a body of brackets cannot overflow the stack.
+    private static final class JsonReader {
+        private static final int MAX_DEPTH = 64;
+
+        private final String text;
+        private int position;
+        private int depth; // Objects and arrays open around position
+
+        JsonReader(byte[] body) {
+            this.text = new String(body, StandardCharsets.UTF_8);
+        }
+
+        Object readDocument() throws RequestException {
+            Object value = readValue();
+            skipWhitespace();
+            if (position != text.length()) {
+                throw error("Unexpected text after the JSON value");
+            }
+            return value;
+        }
+
+        private Object readValue() throws RequestException {
+            skipWhitespace();
+            if (position == text.length()) {
+                throw error("Unexpected end of JSON");
+            }
+            char c = text.charAt(position);
+            switch (c) {
+                case '{':
+                    return readObject();
+                case '[':
+                    return readArray();
+                case '"':
+                    return readString();
+                case 't':
+                    return readLiteral("true", Boolean.TRUE);
+                case 'f':
+                    return readLiteral("false", Boolean.FALSE);
+                case 'n':
+                    return readLiteral("null", null);
+                default:
+                    return readNumber();
+            }
+        }
+
+        private Map<String, Object> readObject() throws RequestException {
+            Map<String, Object> object = new LinkedHashMap<>();
+            enter();
+            position++; // {
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                depth--;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw error("Expected a field name");
+                }
+                String name = readString();
+                skipWhitespace();
+                expect(':');
+                object.put(name, readValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    expect('}');
+                    depth--;
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> readArray() throws RequestException {
+            List<Object> array = new ArrayList<>();
+            enter();
+            position++; // [
+            skipWhitespace();
+            if (peek() == ']') {
+                position++;
+                depth--;
+                return array;
+            }
+            while (true) {
+                array.add(readValue());
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    expect(']');
+                    depth--;
+                    return array;
+                }
+            }
+        }
+
+        private String readString() throws RequestException {
+            StringBuilder value = new StringBuilder();
+            position++; // Opening quote
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position == text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("Bad \\u escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Bad \\u escape");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped); // \" \\ \/
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        // -?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)?, checked here and converted by whoever reads it
+        private JsonNumber readNumber() throws RequestException {
+            int start = position;
+            if (peek() == '-') {
+                position++;
+            }
+            if (peek() == '0') {
+                position++;
+            } else if (skipDigits() == 0) {
+                throw error("Unexpected character");
+            }
+            if (peek() == '.') {
+                position++;
+                if (skipDigits() == 0) {
+                    throw error("Expected a digit");
+                }
+            }
+            if (peek() == 'e' || peek() == 'E') {
+                position++;
+                if (peek() == '+' || peek() == '-') {
+                    position++;
+                }
+                if (skipDigits() == 0) {
+                    throw error("Expected a digit");
+                }
+            }
+            return new JsonNumber(text.substring(start, position));
+        }
+
+        private int skipDigits() {
+            int start = position;
+            while (peek() >= '0' && peek() <= '9') {
+                position++;
+            }
+            return position - start;
+        }
+
+        private void enter() throws RequestException {
+            if (++depth > MAX_DEPTH) {
+                throw error("JSON nested deeper than " + MAX_DEPTH + " levels");
+            }
+        }
+
+        private Object readLiteral(String literal, Object value) throws RequestException {
+            if (!text.startsWith(literal, position)) {
+                throw error("Unexpected character");
+            }
+            position += literal.length();
+            return value;
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() {
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+
+        private void expect(char c) throws RequestException {
+            if (peek() != c) {
+                throw error("Expected '" + c + "'");
+            }
+            position++;
+        }
+
+        private RequestException error(String message) {
+            return new RequestException(400, message + " at offset " + position);
+        }
+    }
+}
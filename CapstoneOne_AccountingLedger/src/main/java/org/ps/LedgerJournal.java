@@ -0,0 +1,340 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Append-only journal for new transactions.
+// A single FileChannel stays open for the life of the application and one writer thread drains
+// every pending line into a single write (group commit). How often the data is forced to disk
+// is controlled by the FsyncPolicy. On open, a line left half-written by a crash is repaired
+// or cut off, so the file always ends on a complete transaction.
+public class LedgerJournal implements TransactionLog {
+
+    // When the journal forces written data to disk
+    public enum FsyncPolicy {
+        EVERY_WRITE, // Force after every group commit, appenders return once their line is durable
+        INTERVAL,    // Force at most every N milliseconds
+        RECORDS      // Force after every N records
+    }
+
+    private static final int BATCH_BUFFER_SIZE = 1 << 16; // 64 KB, grows for very large batches
+    private static final int MAX_BATCH_BUFFER_SIZE = 1 << 26; // 64 MB; larger batches are written in parts
+
+    private final FileChannel channel;
+    private final FsyncPolicy policy;
+    private final long policyValue; // Milliseconds for INTERVAL, records for RECORDS
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pendingAvailable = lock.newCondition();
+    private List<PendingLine> pending = new ArrayList<>(); // Lines waiting for the writer thread
+    private final Thread writer;
+    private boolean closed;
+    private IOException failure; // Why the writer thread stopped, if it failed
+
+    private ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BUFFER_SIZE);
+    private long unsyncedRecords; // Records written since the last force
+    private long lastSync = System.nanoTime();
+
+    // The lines of one append waiting to be written, completed once they are written (and forced,
+    // if the policy says so)
+    private static final class PendingLine {
+        final byte[] bytes;
+        final int records; // Transactions in the bytes
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        PendingLine(byte[] bytes, int records) {
+            this.bytes = bytes;
+            this.records = records;
+        }
+    }
+
+    private LedgerJournal(FileChannel channel, FsyncPolicy policy, long policyValue) {
+        this.channel = channel;
+        this.policy = policy;
+        this.policyValue = policyValue;
+        this.writer = new Thread(this::writeLoop, "ledger-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Repair the file after a possible crash and open it for appending
+    public static LedgerJournal open(Path path, FsyncPolicy policy, long policyValue) throws IOException {
+        recover(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        return new LedgerJournal(channel, policy, policyValue);
+    }
+
+    // Read the fsync policy from the ledger.fsync (always, interval, records) and
+    // ledger.fsync.every (milliseconds or records) system properties
+    public static LedgerJournal open(Path path) throws IOException {
+        String name = System.getProperty("ledger.fsync", "always");
+        long every = Long.getLong("ledger.fsync.every", 100);
+        FsyncPolicy policy;
+        switch (name) {
+            case "interval":
+                policy = FsyncPolicy.INTERVAL;
+                break;
+            case "records":
+                policy = FsyncPolicy.RECORDS;
+                break;
+            default:
+                policy = FsyncPolicy.EVERY_WRITE;
+        }
+        return open(path, policy, every);
+    }
+
+    // Make sure the file ends on a complete line. A last line without a newline is kept (and
+    // terminated) if it is a valid transaction, otherwise it is the remains of an interrupted write
+    // and is cut off. Returns the number of bytes dropped.
+    public static int recover(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long tailStart = size;
+            ByteBuffer probe = ByteBuffer.allocate(4096);
+            while (tailStart > 0) {
+                long from = Math.max(0, tailStart - probe.capacity());
+                probe.clear().limit((int) (tailStart - from));
+                channel.read(probe, from);
+                int i = probe.position() - 1;
+                while (i >= 0 && probe.get(i) != '\n') {
+                    i--;
+                }
+                if (i >= 0) {
+                    tailStart = from + i + 1;
+                    break;
+                }
+                tailStart = from;
+            }
+            if (tailStart == size) {
+                return 0; // Already ends with a newline (or is empty)
+            }
+
+            ByteBuffer tail = ByteBuffer.allocate((int) (size - tailStart));
+            channel.read(tail, tailStart);
+            if (new LedgerCsvParser(new LedgerStore()).parseLine(tail, 0, tail.capacity())) {
+                channel.write(ByteBuffer.wrap(new byte[]{'\n'}), size); // Complete row, just missing its newline
+                channel.force(true);
+                return 0;
+            }
+            channel.truncate(tailStart);
+            channel.force(true);
+            System.out.println("Recovered journal: dropped " + (size - tailStart) + " bytes of a partially written transaction.");
+            return (int) (size - tailStart);
+        }
+    }
+
+    // Append one transaction, blocking until it has been written according to the fsync policy
+    @Override
+    public void append(Transaction transaction) throws IOException {
+        write(List.of(transaction));
+    }
+
+    // Append many transactions as one batch
+    @Override
+    public void appendAll(List<Transaction> transactions) throws IOException {
+        write(transactions);
+    }
+
+    private void write(List<Transaction> transactions) throws IOException {
+        Metrics.OperationEvent event = Metrics.APPEND.begin();
+        PendingLine line = submit(transactions);
+        await(line.done);
+        Metrics.APPEND.end(event, transactions.size(), line.bytes.length);
+    }
+
+    private PendingLine submit(List<Transaction> transactions) throws IOException {
+        StringBuilder lines = new StringBuilder(transactions.size() * 64);
+        for (Transaction transaction : transactions) {
+            lines.append(transaction.toCSV()).append('\n');
+        }
+        PendingLine line = new PendingLine(lines.toString().getBytes(StandardCharsets.UTF_8), transactions.size());
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Journal is closed", failure);
+            }
+            pending.add(line);
+            pendingAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        return line;
+    }
+
+    private static void await(CompletableFuture<Void> done) throws IOException {
+        try {
+            done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Writer thread: take everything that is pending, write it in one go, force if due. If a write
+    // fails, every line taken or still pending fails with it and the journal is closed.
+    private void writeLoop() {
+        while (true) {
+            List<PendingLine> drained;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    if (policy == FsyncPolicy.INTERVAL && unsyncedRecords > 0) {
+                        pendingAvailable.await(policyValue, TimeUnit.MILLISECONDS);
+                        break; // Time to force the data written so far
+                    }
+                    pendingAvailable.await();
+                }
+                if (pending.isEmpty() && closed) {
+                    return;
+                }
+                drained = pending;
+                pending = new ArrayList<>();
+            } catch (InterruptedException e) {
+                fail(List.of(), new IOException("Journal writer interrupted", e));
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                writeBatch(drained);
+            } catch (Throwable e) {
+                fail(drained, e instanceof IOException ? (IOException) e : new IOException("Journal write failed", e));
+                return;
+            }
+            for (PendingLine line : drained) {
+                line.done.complete(null);
+            }
+        }
+    }
+
+    // Close the journal after a failed write: fail the lines that were being written and every line
+    // still pending, and refuse new ones
+    private void fail(List<PendingLine> drained, IOException cause) {
+        List<PendingLine> waiting;
+        lock.lock();
+        try {
+            closed = true;
+            failure = cause;
+            waiting = pending;
+            pending = new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+        for (PendingLine line : drained) {
+            line.done.completeExceptionally(cause);
+        }
+        for (PendingLine line : waiting) {
+            line.done.completeExceptionally(cause);
+        }
+    }
+
+    private void writeBatch(List<PendingLine> lines) throws IOException {
+        long total = 0;
+        int records = 0;
+        for (PendingLine line : lines) {
+            total += line.bytes.length;
+            records += line.records;
+        }
+        if (total > batch.capacity() && batch.capacity() < MAX_BATCH_BUFFER_SIZE) {
+            batch = ByteBuffer.allocateDirect((int) Math.min(Long.highestOneBit(total) << 1, MAX_BATCH_BUFFER_SIZE));
+        }
+        batch.clear();
+        for (PendingLine line : lines) {
+            if (line.bytes.length > batch.remaining()) {
+                writeFully(batch.flip());
+                batch.clear();
+                if (line.bytes.length > batch.capacity()) {
+                    writeFully(ByteBuffer.wrap(line.bytes)); // Larger than the buffer can ever be
+                    continue;
+                }
+            }
+            batch.put(line.bytes);
+        }
+        writeFully(batch.flip());
+        unsyncedRecords += records;
+        if (isSyncDue()) {
+            channel.force(false);
+            unsyncedRecords = 0;
+            lastSync = System.nanoTime();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private boolean isSyncDue() {
+        if (unsyncedRecords == 0) {
+            return false;
+        }
+        switch (policy) {
+            case INTERVAL:
+                return System.nanoTime() - lastSync >= TimeUnit.MILLISECONDS.toNanos(policyValue);
+            case RECORDS:
+                return unsyncedRecords >= policyValue;
+            default:
+                return true;
+        }
+    }
+
+    // Write whatever is still pending, force it to disk and close the file. Lines the writer thread
+    // could not write (it failed, or the wait for it was interrupted) fail.
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed && !channel.isOpen()) {
+                return;
+            }
+            closed = true;
+            pendingAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingLine> unwritten;
+        IOException cause;
+        lock.lock();
+        try {
+            unwritten = pending;
+            pending = new ArrayList<>();
+            cause = new IOException("Journal is closed", failure);
+        } finally {
+            lock.unlock();
+        }
+        for (PendingLine line : unwritten) {
+            line.done.completeExceptionally(cause);
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,594 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// The ledger stored as one file per month instead of one flat transactions.csv.
+//
+// Each partition (yyyy-MM.csv) has the transactions.csv layout and is appended to through its own
+// journal. manifest.csv lists every partition with its row count, first and last date, income,
+// expenses and file size, so a query can skip the partitions outside its date range without
+// opening them, and whole-month totals need no file at all. The manifest is rewritten when the
+// partitions are closed; a partition whose size no longer matches its manifest entry (e.g. after
+// a crash) is repaired and rescanned when the partitions are opened.
+//
+// Closed years can be moved into compressed archives (yyyy.archive, see LedgerArchive). An archive
+// replaces the month files of its year and describes itself, so it has no manifest entries; a
+// transaction dated in an archived year later on goes to a month file again until the year is
+// archived once more.
+public class LedgerPartitions implements TransactionLog {
+    public static final String MANIFEST = "manifest.csv";
+    private static final String ARCHIVE_SUFFIX = ".archive";
+    private static final String PENDING_SUFFIX = ".pending"; // Archive written but its month files not yet removed
+
+    // Manifest entry of one month
+    public static final class Partition {
+        public final int month; // yyyymm
+        private int rows;
+        private int firstDay = Integer.MAX_VALUE;
+        private int lastDay = Integer.MIN_VALUE;
+        private long income;
+        private long expenses; // Zero or negative
+        private long bytes; // File size the other fields describe
+        private boolean unsure; // An append failed, so the file may hold rows the fields do not count
+
+        Partition(int month) {
+            this.month = month;
+        }
+
+        void add(int epochDay, long cents) {
+            rows++;
+            firstDay = Math.min(firstDay, epochDay);
+            lastDay = Math.max(lastDay, epochDay);
+            if (cents > 0) {
+                income += cents;
+            } else {
+                expenses += cents;
+            }
+        }
+
+        // Take back an add() whose row never reached the file; the date span stays as wide as it was
+        void remove(long cents) {
+            rows--;
+            if (cents > 0) {
+                income -= cents;
+            } else {
+                expenses -= cents;
+            }
+            unsure = true;
+        }
+
+        // True if the partition has rows dated fromDay to toDay (inclusive)
+        public boolean overlaps(int fromDay, int toDay) {
+            return rows > 0 && lastDay >= fromDay && firstDay <= toDay;
+        }
+
+        // True if every row of the partition is dated fromDay to toDay (inclusive)
+        public boolean within(int fromDay, int toDay) {
+            return firstDay >= fromDay && lastDay <= toDay;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getFirstDay() {
+            return firstDay;
+        }
+
+        public int getLastDay() {
+            return lastDay;
+        }
+
+        public long getIncome() {
+            return income;
+        }
+
+        public long getExpenses() {
+            return expenses;
+        }
+    }
+
+    private final Path directory;
+    private final TreeMap<Integer, Partition> partitions = new TreeMap<>(); // By month
+    private final TreeMap<Integer, LedgerArchive> archives = new TreeMap<>(); // By year
+    private final Map<Integer, LedgerJournal> journals = new HashMap<>(); // Opened on the first append to a month
+    private int appending; // Journal calls in flight outside the monitor
+    private boolean closing; // closeJournals is waiting for those calls; new appends wait for it
+    private boolean dirty; // The manifest no longer matches the partitions
+
+    private LedgerPartitions(Path directory) {
+        this.directory = directory;
+    }
+
+    // True if the directory holds a partitioned ledger
+    public static boolean exists(Path directory) {
+        return Files.isRegularFile(directory.resolve(MANIFEST));
+    }
+
+    // Open a partitioned ledger, bringing the manifest up to date with the partition files
+    public static LedgerPartitions open(Path directory) throws IOException {
+        LedgerPartitions opened = new LedgerPartitions(directory);
+        opened.finishArchiving();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "[0-9][0-9][0-9][0-9]" + ARCHIVE_SUFFIX)) {
+            for (Path file : files) {
+                int year = Integer.parseInt(file.getFileName().toString().substring(0, 4));
+                opened.archives.put(year, LedgerArchive.open(file));
+            }
+        }
+        Map<Integer, Partition> manifest = readManifest(directory.resolve(MANIFEST));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "[0-9][0-9][0-9][0-9]-[0-9][0-9].csv")) {
+            for (Path file : files) {
+                int month = monthOf(file);
+                Partition partition = manifest.get(month);
+                if (partition == null || partition.bytes != Files.size(file)) {
+                    LedgerJournal.recover(file); // Written after the manifest, maybe cut short by a crash
+                    partition = scan(file, month);
+                    opened.dirty = true;
+                }
+                opened.partitions.put(month, partition);
+            }
+        }
+        opened.dirty |= opened.partitions.size() != manifest.size();
+        if (opened.dirty) {
+            opened.writeManifest();
+        }
+        return opened;
+    }
+
+    // Split a flat transactions.csv into a new partitioned ledger in directory, streaming the file
+    // one block at a time. The partitions are written next to the directory and renamed into place
+    // at the end, so an interrupted migration leaves nothing behind. Returns the number of rows.
+    public static int migrate(Path csv, Path directory) throws IOException {
+        if (Files.exists(directory)) {
+            throw new IOException(directory + " already exists");
+        }
+        Path staging = directory.resolveSibling(directory.getFileName() + ".migrating");
+        deleteDirectory(staging);
+        Files.createDirectories(staging);
+
+        LedgerPartitions target = new LedgerPartitions(staging);
+        Map<Integer, BufferedWriter> writers = new HashMap<>();
+        LedgerStore block = new LedgerStore(); // Rows of the current block only
+        int rows;
+        try (InputStream in = Files.newInputStream(csv)) {
+            rows = new LedgerCsvParser(block).load(in, () -> target.writeBlock(block, writers));
+        } finally {
+            for (BufferedWriter writer : writers.values()) {
+                writer.close();
+            }
+        }
+        for (Partition partition : target.partitions.values()) {
+            partition.bytes = Files.size(target.fileOf(partition.month));
+        }
+        target.writeManifest();
+        Files.move(staging, directory, StandardCopyOption.ATOMIC_MOVE);
+        return rows;
+    }
+
+    // Write every row of the block to its month's file, then empty the block
+    private void writeBlock(LedgerStore block, Map<Integer, BufferedWriter> writers) throws IOException {
+        for (int row = 0; row < block.size(); row++) {
+            int day = block.getEpochDay(row);
+            int month = monthOf(day);
+            BufferedWriter writer = writers.get(month);
+            if (writer == null) {
+                writer = Files.newBufferedWriter(fileOf(month), StandardCharsets.UTF_8);
+                writers.put(month, writer);
+            }
+            writer.write(block.toTransaction(row).toCSV());
+            writer.write('\n');
+            partitions.computeIfAbsent(month, Partition::new).add(day, block.getAmountCents(row));
+        }
+        block.clear();
+    }
+
+    // Load the rows of every partition overlapping fromDay to toDay into the target store, month by
+    // month, after the archived blocks overlapping it. Partitions are parsed in parallel; rows outside
+    // the range are loaded too. Returns the number of rows added.
+    public int load(LedgerStore target, int fromDay, int toDay, ForkJoinPool pool) throws IOException {
+        int before = target.size();
+        for (LedgerArchive archive : getArchives()) {
+            archive.load(target, fromDay, toDay, pool); // Only the blocks in range are inflated
+        }
+        List<ForkJoinTask<LedgerStore>> tasks = new ArrayList<>();
+        for (Partition partition : overlapping(fromDay, toDay)) {
+            Path file = fileOf(partition.month);
+            tasks.add(pool.submit(() -> {
+                LedgerStore local = new LedgerStore();
+                new LedgerCsvParser(local).load(file);
+                return local;
+            }));
+        }
+        for (ForkJoinTask<LedgerStore> task : tasks) {
+            target.appendAll(task.join());
+        }
+        return target.size() - before;
+    }
+
+    // Partitions with rows dated fromDay to toDay (inclusive), by month
+    public synchronized List<Partition> overlapping(int fromDay, int toDay) {
+        List<Partition> found = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            if (partition.overlaps(fromDay, toDay)) {
+                found.add(partition);
+            }
+        }
+        return found;
+    }
+
+    // Bytes on disk that load(fromDay, toDay) reads
+    public long bytesOverlapping(int fromDay, int toDay) {
+        long bytes = 0;
+        for (LedgerArchive archive : getArchives()) {
+            for (LedgerArchive.Block block : archive.getBlocks()) {
+                if (block.overlaps(fromDay, toDay)) {
+                    bytes += block.getCompressedLength();
+                }
+            }
+        }
+        for (Partition partition : overlapping(fromDay, toDay)) {
+            bytes += partition.bytes;
+        }
+        return bytes;
+    }
+
+    // Income and expenses of the rows dated fromDay to toDay (inclusive). Partitions and archive
+    // blocks inside the range are answered by the manifest and the archive indexes; only the ones
+    // cut by the range are read.
+    public TotalsIndex.PeriodTotals totals(int fromDay, int toDay) throws IOException {
+        long income = 0;
+        long expenses = 0;
+        for (LedgerArchive archive : getArchives()) {
+            TotalsIndex.PeriodTotals archived = archive.totals(fromDay, toDay);
+            income += archived.income;
+            expenses += archived.expenses;
+        }
+        for (Partition partition : overlapping(fromDay, toDay)) {
+            if (partition.within(fromDay, toDay)) {
+                income += partition.income;
+                expenses += partition.expenses;
+                continue;
+            }
+            LedgerStore rows = new LedgerStore();
+            new LedgerCsvParser(rows).load(fileOf(partition.month));
+            TotalsIndex.PeriodTotals cut = TotalsIndex.scan(rows, fromDay, toDay);
+            income += cut.income;
+            expenses += cut.expenses;
+        }
+        return new TotalsIndex.PeriodTotals(income, expenses);
+    }
+
+    // Append a transaction to its month's partition. The monitor is only held to find the journal
+    // and count the row; the journal call, which waits for its group commit, runs outside it so
+    // other appends can join that commit. Journals are only closed once no such call is in flight.
+    @Override
+    public void append(Transaction transaction) throws IOException {
+        appendAll(List.of(transaction));
+    }
+
+    // Append transactions, one batch per month they fall in
+    @Override
+    public void appendAll(List<Transaction> transactions) throws IOException {
+        Map<Integer, List<Transaction>> byMonth = new TreeMap<>();
+        for (Transaction transaction : transactions) {
+            byMonth.computeIfAbsent(monthOf(transaction.getEpochDay()), month -> new ArrayList<>()).add(transaction);
+        }
+        for (Map.Entry<Integer, List<Transaction>> entry : byMonth.entrySet()) {
+            int month = entry.getKey();
+            LedgerJournal journal;
+            Partition partition;
+            synchronized (this) {
+                while (closing) {
+                    waitForMonitor();
+                }
+                journal = journal(month);
+                partition = partitions.computeIfAbsent(month, Partition::new);
+                for (Transaction transaction : entry.getValue()) {
+                    partition.add(transaction.getEpochDay(), transaction.getAmountCents());
+                }
+                dirty = true;
+                appending++;
+            }
+            try {
+                journal.appendAll(entry.getValue());
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    if (partitions.get(month) == partition) { // Not replaced by a rewrite or archived since
+                        for (Transaction transaction : entry.getValue()) {
+                            partition.remove(transaction.getAmountCents());
+                        }
+                    }
+                    if (journals.get(month) == journal) {
+                        journals.remove(month); // A failed journal stays closed; the next append reopens the file
+                        partition.bytes = -1; // Rescanned on the next open
+                        try {
+                            journal.close();
+                        } catch (IOException closeFailure) {
+                            e.addSuppressed(closeFailure);
+                        }
+                    }
+                }
+                throw e;
+            } finally {
+                synchronized (this) {
+                    appending--;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    // Wait on the monitor, which the caller holds
+    private void waitForMonitor() throws IOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the partition journals");
+        }
+    }
+
+    // Rewrite every partition and archive from the store, which must hold the whole ledger. Each
+    // month's file and each archive is replaced atomically; the manifest is rebuilt from the rows.
+    public synchronized void rewrite(LedgerStore store, ForkJoinPool pool) throws IOException {
+        closeJournals();
+        TreeMap<Integer, IntList> rowsByYear = new TreeMap<>(); // Archived years only
+        TreeMap<Integer, IntList> rowsByMonth = new TreeMap<>();
+        TreeMap<Integer, Partition> rebuilt = new TreeMap<>();
+        int size = store.size();
+        for (int row = 0; row < size; row++) {
+            int day = store.getEpochDay(row);
+            int month = monthOf(day);
+            if (archives.containsKey(month / 100)) {
+                rowsByYear.computeIfAbsent(month / 100, key -> new IntList()).add(row);
+                continue;
+            }
+            rowsByMonth.computeIfAbsent(month, key -> new IntList()).add(row);
+            rebuilt.computeIfAbsent(month, Partition::new).add(day, store.getAmountCents(row));
+        }
+        for (Map.Entry<Integer, IntList> entry : rowsByYear.entrySet()) {
+            writeArchive(entry.getKey(), store, entry.getValue().toArray(), pool);
+        }
+        for (Map.Entry<Integer, IntList> entry : rowsByMonth.entrySet()) {
+            Path file = fileOf(entry.getKey());
+            LedgerCsvWriter.write(store, entry.getValue().toArray(), file, pool);
+            rebuilt.get(entry.getKey()).bytes = Files.size(file);
+        }
+        partitions.clear();
+        partitions.putAll(rebuilt);
+        writeManifest();
+    }
+
+    // Move every year before beforeYear into a compressed archive, merged with the year's existing
+    // archive if it has one, and remove its month files. Returns the number of rows archived.
+    public synchronized int archive(int beforeYear, ForkJoinPool pool) throws IOException {
+        closeJournals();
+        TreeMap<Integer, List<Integer>> monthsByYear = new TreeMap<>();
+        for (Partition partition : partitions.values()) {
+            if (partition.month / 100 < beforeYear) {
+                monthsByYear.computeIfAbsent(partition.month / 100, year -> new ArrayList<>()).add(partition.month);
+            }
+        }
+        int archived = 0;
+        for (Map.Entry<Integer, List<Integer>> entry : monthsByYear.entrySet()) {
+            LedgerStore rows = new LedgerStore();
+            LedgerArchive existing = archives.get(entry.getKey());
+            if (existing != null) {
+                existing.load(rows, Integer.MIN_VALUE, Integer.MAX_VALUE, pool);
+            }
+            int before = rows.size();
+            for (int month : entry.getValue()) {
+                new LedgerCsvParser(rows).load(fileOf(month));
+            }
+            archived += rows.size() - before;
+            int[] all = new int[rows.size()];
+            for (int row = 0; row < all.length; row++) {
+                all[row] = row;
+            }
+            writeArchive(entry.getKey(), rows, all, pool);
+        }
+        if (dirty) {
+            writeManifest();
+        }
+        return archived;
+    }
+
+    // Write a year's archive as a pending file, remove the year's month files, then rename the
+    // archive into place. A crash in between is finished by finishArchiving on the next open.
+    private void writeArchive(int year, LedgerStore store, int[] rows, ForkJoinPool pool) throws IOException {
+        Path pending = pendingOf(year);
+        LedgerArchive.write(store, rows, pending, pool);
+        removeMonthFiles(year);
+        Files.move(pending, archiveOf(year), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LedgerCsvWriter.forceDirectory(directory);
+        archives.put(year, LedgerArchive.open(archiveOf(year)));
+    }
+
+    // Complete archiving interrupted by a crash: a pending archive that was written out in full
+    // already holds its year's month files, anything else is discarded
+    private void finishArchiving() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                "[0-9][0-9][0-9][0-9]" + ARCHIVE_SUFFIX + PENDING_SUFFIX)) {
+            for (Path file : files) {
+                int year = Integer.parseInt(file.getFileName().toString().substring(0, 4));
+                try {
+                    LedgerArchive.open(file);
+                } catch (IOException e) {
+                    Files.delete(file); // Cut short before its month files were touched
+                    continue;
+                }
+                try (DirectoryStream<Path> months = Files.newDirectoryStream(directory, year + "-[0-9][0-9].csv")) {
+                    for (Path month : months) {
+                        Files.delete(month);
+                    }
+                }
+                Files.move(file, archiveOf(year), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+
+    private void removeMonthFiles(int year) throws IOException {
+        for (int month = year * 100 + 1; month <= year * 100 + 12; month++) {
+            if (partitions.remove(month) != null) {
+                dirty = true;
+            }
+            Files.deleteIfExists(fileOf(month));
+        }
+    }
+
+    private LedgerJournal journal(int month) throws IOException {
+        LedgerJournal journal = journals.get(month);
+        if (journal == null) {
+            journal = LedgerJournal.open(fileOf(month));
+            journals.put(month, journal);
+        }
+        return journal;
+    }
+
+    // Close every open journal and write the manifest if anything was appended
+    @Override
+    public synchronized void close() throws IOException {
+        closeJournals();
+        if (dirty) {
+            writeManifest();
+        }
+    }
+
+    // Close every journal once the appends in flight on them are done. New appends wait meanwhile.
+    private void closeJournals() throws IOException {
+        closing = true;
+        try {
+            while (appending > 0) {
+                waitForMonitor();
+            }
+        } finally {
+            closing = false;
+            notifyAll();
+        }
+        for (Map.Entry<Integer, LedgerJournal> entry : journals.entrySet()) {
+            entry.getValue().close();
+            Partition partition = partitions.get(entry.getKey());
+            partition.bytes = partition.unsure ? -1 : Files.size(fileOf(entry.getKey())); // -1: rescanned on the next open
+        }
+        journals.clear();
+    }
+
+    // Every partition, by month
+    public synchronized List<Partition> getPartitions() {
+        return new ArrayList<>(partitions.values());
+    }
+
+    // Every archive, by year
+    public synchronized List<LedgerArchive> getArchives() {
+        return new ArrayList<>(archives.values());
+    }
+
+    private Path fileOf(int month) {
+        return directory.resolve(String.format("%04d-%02d.csv", month / 100, month % 100));
+    }
+
+    private Path archiveOf(int year) {
+        return directory.resolve(String.format("%04d", year) + ARCHIVE_SUFFIX);
+    }
+
+    private Path pendingOf(int year) {
+        return directory.resolve(String.format("%04d", year) + ARCHIVE_SUFFIX + PENDING_SUFFIX);
+    }
+
+    private static int monthOf(int epochDay) {
+        return DateTimeCodec.toYearMonthDay(epochDay) / 100;
+    }
+
+    private static int monthOf(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(0, 4)) * 100 + Integer.parseInt(name.substring(5, 7));
+    }
+
+    // Rebuild a manifest entry from the rows of a partition file
+    private static Partition scan(Path file, int month) throws IOException {
+        LedgerStore rows = new LedgerStore();
+        new LedgerCsvParser(rows).load(file);
+        Partition partition = new Partition(month);
+        for (int row = 0; row < rows.size(); row++) {
+            partition.add(rows.getEpochDay(row), rows.getAmountCents(row));
+        }
+        partition.bytes = Files.size(file);
+        return partition;
+    }
+
+    // Manifest lines: month|rows|first date|last date|income|expenses|bytes
+    private static Map<Integer, Partition> readManifest(Path manifest) throws IOException {
+        Map<Integer, Partition> entries = new HashMap<>();
+        if (!Files.exists(manifest)) {
+            return entries;
+        }
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\\|");
+            if (fields.length != 7) {
+                continue; // Unreadable entries are rebuilt from their partition
+            }
+            try {
+                Partition partition = new Partition(Integer.parseInt(fields[0].replace("-", "")));
+                partition.rows = Integer.parseInt(fields[1]);
+                partition.firstDay = DateTimeCodec.parseDate(fields[2]);
+                partition.lastDay = DateTimeCodec.parseDate(fields[3]);
+                partition.income = Money.parse(fields[4]);
+                partition.expenses = Money.parse(fields[5]);
+                partition.bytes = Long.parseLong(fields[6]);
+                if (partition.firstDay != DateTimeCodec.INVALID && partition.lastDay != DateTimeCodec.INVALID
+                        && partition.income != Money.INVALID && partition.expenses != Money.INVALID) {
+                    entries.put(partition.month, partition);
+                }
+            } catch (NumberFormatException e) {
+                // Rebuilt from its partition
+            }
+        }
+        return entries;
+    }
+
+    // Write the manifest to a temporary file and move it over the old one in one step
+    private void writeManifest() throws IOException {
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Partition partition : partitions.values()) {
+                if (partition.rows == 0) {
+                    continue;
+                }
+                writer.write(String.format("%04d-%02d|%d|%s|%s|%s|%s|%d%n", partition.month / 100, partition.month % 100,
+                        partition.rows, DateTimeCodec.formatDate(partition.firstDay), DateTimeCodec.formatDate(partition.lastDay),
+                        Money.format(partition.income), Money.format(partition.expenses), partition.bytes));
+            }
+        }
+        Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
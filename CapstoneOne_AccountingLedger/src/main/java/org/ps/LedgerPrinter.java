@@ -0,0 +1,261 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.util.Arrays;
+import java.util.Scanner;
+
+// Renders ledger rows to the console in large blocks.
+// Rows are formatted into one reusable char array (no String.format, no per-row Strings), encoded
+// into a large direct buffer and written to the stdout channel only when the buffer fills up or
+// the listing ends. System.out is flushed first so both kinds of output stay in order.
+//
+// A listing can be limited to a window of rows (offset/limit) and, on a terminal, paged: after
+// every page the user can continue, print everything that is left, or stop and go back to the menu.
+public class LedgerPrinter {
+
+    // Column layouts; the padded styles pad date, time, description, vendor and amount to the same widths
+    public enum Style {
+        PLAIN("", " ", "", "", true),       // Same as "%-10s %-8s %-30s %-20s %-10.2f"
+        REPORT("", " ", "$", "", true),     // Same as "%-10s %-8s %-30s %-20s $%-10.2f"
+        BOXED("| ", " | ", "", " |", true), // Same as "| %-10s | %-8s | %-30s | %-20s | %-10.2f |"
+        CSV("", "|", "", "", false);        // Same layout as transactions.csv, for scripts
+
+        final char[] prefix;
+        final char[] separator;
+        final char[] amountPrefix;
+        final char[] suffix;
+        final boolean padded;
+
+        Style(String prefix, String separator, String amountPrefix, String suffix, boolean padded) {
+            this.prefix = prefix.toCharArray();
+            this.separator = separator.toCharArray();
+            this.amountPrefix = amountPrefix.toCharArray();
+            this.suffix = suffix.toCharArray();
+            this.padded = padded;
+        }
+    }
+
+    private static final int DATE_WIDTH = 10;
+    private static final int TIME_WIDTH = 8;
+    private static final int DESCRIPTION_WIDTH = 30;
+    private static final int VENDOR_WIDTH = 20;
+    private static final int AMOUNT_WIDTH = 10;
+    private static final char[] SPACES = new char[DESCRIPTION_WIDTH];
+    private static final char[] NEWLINE = System.lineSeparator().toCharArray();
+    private static final int CHAR_BUFFER_SIZE = 1 << 15;
+    private static final int BYTE_BUFFER_SIZE = 1 << 17; // 128 KB per write
+
+    static {
+        Arrays.fill(SPACES, ' ');
+    }
+
+    private final LedgerStore store;
+    private final WritableByteChannel out;
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE); // Formatted, not yet encoded
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE); // Encoded, not yet written
+    private char[] line = new char[128]; // Reused for every row
+
+    private int offset; // Rows to skip before printing
+    private int limit = Integer.MAX_VALUE; // Rows to print at most
+    private Scanner pagerInput; // Answers to the pager prompt, null for no pager
+    private int pageSize;
+    private int currentPageSize;
+    private int seen; // Rows offered in the current listing, including skipped ones
+    private int printed; // Rows printed in the current listing
+    private boolean stopped; // The user quit the current listing at the pager
+
+    public LedgerPrinter(LedgerStore store, WritableByteChannel out, Charset charset) {
+        this.store = store;
+        this.out = out;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE) // e.g. "?" for text the console charset lacks
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    // Printer for the process's standard output. The channel is never closed, only flushed.
+    public static LedgerPrinter console(LedgerStore store) {
+        String encoding = System.getProperty("stdout.encoding", Charset.defaultCharset().name());
+        return new LedgerPrinter(store, new FileOutputStream(FileDescriptor.out).getChannel(), Charset.forName(encoding));
+    }
+
+    // Only print rows offset to offset + limit - 1 of each listing
+    public void setWindow(int offset, int limit) {
+        this.offset = Math.max(offset, 0);
+        this.limit = limit < 0 ? Integer.MAX_VALUE : limit;
+    }
+
+    // Pause every pageSize rows and ask on the console whether to go on (0 turns paging off)
+    public void setPager(Scanner input, int pageSize) {
+        this.pagerInput = input;
+        this.pageSize = pageSize;
+    }
+
+    // Start a new listing
+    public void begin() {
+        System.out.flush(); // Anything printed through System.out goes before this listing
+        seen = 0;
+        printed = 0;
+        stopped = false;
+        currentPageSize = pagerInput == null ? 0 : pageSize;
+    }
+
+    // Print one row. Returns false once the listing should stop (limit reached or the user quit the pager).
+    public boolean row(int row, Style style) {
+        if (stopped || printed >= limit) {
+            return false;
+        }
+        if (seen++ < offset) {
+            return true;
+        }
+        if (currentPageSize > 0 && printed > 0 && printed % currentPageSize == 0 && !askForMore()) {
+            stopped = true; // Quietly skip the rest of this listing
+            return false;
+        }
+        write(line, 0, formatRow(row, style));
+        printed++;
+        return printed < limit;
+    }
+
+    // Print text as is
+    public void print(String text) {
+        ensureLine(text.length());
+        text.getChars(0, text.length(), line, 0);
+        write(line, 0, text.length());
+    }
+
+    // Print a line of text
+    public void println(String text) {
+        print(text);
+        write(NEWLINE, 0, NEWLINE.length);
+    }
+
+    // Rows printed since begin()
+    public int getPrinted() {
+        return printed;
+    }
+
+    // The row as a String in the given style, without the line separator
+    public String format(int row, Style style) {
+        return new String(line, 0, formatRow(row, style) - NEWLINE.length);
+    }
+
+    // Format the row into the line buffer and return its length, including the line separator
+    private int formatRow(int row, Style style) {
+        String description = store.getDescription(row);
+        String vendor = store.getVendor(row);
+        ensureLine(description.length() + vendor.length() + 96);
+        char[] chars = line;
+        int position = put(chars, 0, style.prefix);
+        DateTimeCodec.writeDate(chars, position, store.getEpochDay(row));
+        position = put(chars, position + DATE_WIDTH, style.separator);
+        DateTimeCodec.writeTime(chars, position, store.getSecondOfDay(row));
+        position = put(chars, position + TIME_WIDTH, style.separator);
+        position = putPadded(chars, position, description, style.padded ? DESCRIPTION_WIDTH : 0);
+        position = put(chars, position, style.separator);
+        position = putPadded(chars, position, vendor, style.padded ? VENDOR_WIDTH : 0);
+        position = put(chars, position, style.separator);
+        position = put(chars, position, style.amountPrefix);
+        int start = position;
+        position = Money.write(chars, position, store.getAmountCents(row));
+        position = pad(chars, position, (style.padded ? AMOUNT_WIDTH : 0) - (position - start));
+        position = put(chars, position, style.suffix);
+        return put(chars, position, NEWLINE);
+    }
+
+    private void ensureLine(int length) {
+        if (line.length < length) {
+            line = new char[Math.max(length, line.length * 2)];
+        }
+    }
+
+    private static int put(char[] chars, int position, char[] text) {
+        System.arraycopy(text, 0, chars, position, text.length);
+        return position + text.length;
+    }
+
+    // Write text left-aligned in a column of the given width; longer text is not cut off
+    private static int putPadded(char[] chars, int position, String text, int width) {
+        text.getChars(0, text.length(), chars, position);
+        return pad(chars, position + text.length(), width - text.length());
+    }
+
+    private static int pad(char[] chars, int position, int count) {
+        if (count <= 0) {
+            return position;
+        }
+        System.arraycopy(SPACES, 0, chars, position, count);
+        return position + count;
+    }
+
+    // Ask whether to print the next page. Returns false if the user wants to stop.
+    private boolean askForMore() {
+        flush();
+        System.out.print("-- " + printed + " rows shown. Enter: next page, a: all, q: back to menu -- ");
+        System.out.flush();
+        String answer = pagerInput.hasNextLine() ? pagerInput.nextLine().trim().toLowerCase() : "q";
+        if (answer.equals("q")) {
+            return false;
+        }
+        if (answer.equals("a")) {
+            currentPageSize = 0;
+        }
+        return true;
+    }
+
+    private void write(char[] text, int from, int length) {
+        while (length > 0) {
+            int count = Math.min(length, chars.remaining());
+            chars.put(text, from, count);
+            from += count;
+            length -= count;
+            if (!chars.hasRemaining()) {
+                encodePending();
+            }
+        }
+    }
+
+    // Encode the pending chars into the byte buffer, writing the bytes out whenever it fills up
+    private void encodePending() {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, false);
+            if (result.isOverflow()) {
+                writeBytes();
+            } else {
+                break;
+            }
+        }
+        chars.compact(); // Keeps a dangling high surrogate for the next round
+    }
+
+    private void writeBytes() {
+        bytes.flip();
+        try {
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bytes.clear();
+    }
+
+    // Write everything buffered so far to the channel
+    public void flush() {
+        encodePending();
+        writeBytes();
+    }
+}
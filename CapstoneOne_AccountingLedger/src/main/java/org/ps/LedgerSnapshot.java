@@ -0,0 +1,208 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+// Binary snapshot of a LedgerStore, so startup does not have to re-parse the CSV.
+//
+// Layout (big-endian):
+//   header:  magic "LDGS" | version | source size | source last-modified millis | rows | vendors | descriptions
+//   columns: epoch days (int) | seconds of day (int) | amount cents (long) | vendor ids (int) | description ids (int)
+//   strings: vendor dictionary then description dictionary, each entry as length (int) + UTF-8 bytes
+//   trailer: CRC32C of everything before it (long)
+//
+// The snapshot remembers the size and modification time of the CSV it was taken from. It is only
+// used when those still match and its checksum is intact; otherwise the caller falls back to the CSV.
+public final class LedgerSnapshot {
+    private static final int MAGIC = 0x4C444753; // "LDGS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20; // 1 MB
+
+    private LedgerSnapshot() {
+    }
+
+    // Write a snapshot of the store, tagged with the current size and mtime of the source file
+    public static void write(LedgerStore store, Path snapshot, Path source) throws IOException {
+        long sourceSize = Files.exists(source) ? Files.size(source) : -1;
+        long sourceModified = Files.exists(source) ? Files.getLastModifiedTime(source).toMillis() : -1;
+        Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            SnapshotWriter out = new SnapshotWriter(channel);
+            out.buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putLong(sourceModified)
+                    .putInt(store.size()).putInt(store.getVendors().size()).putInt(store.getDescriptions().size());
+
+            for (int s = 0; s < store.segmentCount(); s++) {
+                LedgerStore.Segment segment = store.segment(s);
+                int length = store.segmentLength(s);
+                for (int i = 0; i < length; i++) {
+                    out.ensure(4).putInt(segment.epochDays[i]);
+                }
+            }
+            for (int s = 0; s < store.segmentCount(); s++) {
+                LedgerStore.Segment segment = store.segment(s);
+                int length = store.segmentLength(s);
+                for (int i = 0; i < length; i++) {
+                    out.ensure(4).putInt(segment.secondsOfDay[i]);
+                }
+            }
+            for (int s = 0; s < store.segmentCount(); s++) {
+                LedgerStore.Segment segment = store.segment(s);
+                int length = store.segmentLength(s);
+                for (int i = 0; i < length; i++) {
+                    out.ensure(8).putLong(segment.amountCents[i]);
+                }
+            }
+            for (int s = 0; s < store.segmentCount(); s++) {
+                LedgerStore.Segment segment = store.segment(s);
+                int length = store.segmentLength(s);
+                for (int i = 0; i < length; i++) {
+                    out.ensure(4).putInt(segment.vendorIds[i]);
+                }
+            }
+            for (int s = 0; s < store.segmentCount(); s++) {
+                LedgerStore.Segment segment = store.segment(s);
+                int length = store.segmentLength(s);
+                for (int i = 0; i < length; i++) {
+                    out.ensure(4).putInt(segment.descriptionIds[i]);
+                }
+            }
+            writeDictionary(out, store.getVendors());
+            writeDictionary(out, store.getDescriptions());
+            out.finish();
+            channel.force(true);
+        }
+        Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeDictionary(SnapshotWriter out, StringDictionary dictionary) throws IOException {
+        for (int id = 0; id < dictionary.size(); id++) {
+            byte[] bytes = dictionary.get(id).getBytes(StandardCharsets.UTF_8);
+            out.ensure(4).putInt(bytes.length);
+            for (int offset = 0; offset < bytes.length; ) {
+                int count = Math.min(bytes.length - offset, out.ensure(1).remaining());
+                out.buffer.put(bytes, offset, count);
+                offset += count;
+            }
+        }
+    }
+
+    // Load the snapshot into an empty store with one mapped read.
+    // Returns false (leaving the store empty) if the snapshot is missing, stale or corrupt.
+    public static boolean read(Path snapshot, Path source, LedgerStore target) {
+        if (!target.isEmpty() || !Files.exists(snapshot)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE + 8 || fileSize > Integer.MAX_VALUE) {
+                return false;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                return false;
+            }
+
+            // Stale if the CSV changed since the snapshot was taken
+            long sourceSize = Files.exists(source) ? Files.size(source) : -1;
+            long sourceModified = Files.exists(source) ? Files.getLastModifiedTime(source).toMillis() : -1;
+            if (mapped.getLong(8) != sourceSize || mapped.getLong(16) != sourceModified) {
+                return false;
+            }
+
+            // Corrupt if the checksum does not match
+            CRC32C crc = new CRC32C();
+            crc.update(mapped.slice(0, (int) fileSize - 8));
+            if (crc.getValue() != mapped.getLong((int) fileSize - 8)) {
+                return false;
+            }
+
+            int rows = mapped.getInt(24);
+            int vendorCount = mapped.getInt(28);
+            int descriptionCount = mapped.getInt(32);
+            int position = HEADER_SIZE;
+            ByteBuffer days = mapped.slice(position, rows * 4);
+            position += rows * 4;
+            ByteBuffer seconds = mapped.slice(position, rows * 4);
+            position += rows * 4;
+            ByteBuffer cents = mapped.slice(position, rows * 8);
+            position += rows * 8;
+            ByteBuffer vendorIds = mapped.slice(position, rows * 4);
+            position += rows * 4;
+            ByteBuffer descriptionIds = mapped.slice(position, rows * 4);
+            position += rows * 4;
+
+            position = readDictionary(mapped, position, vendorCount, target.getVendors());
+            readDictionary(mapped, position, descriptionCount, target.getDescriptions());
+            target.appendColumns(days.asIntBuffer(), seconds.asIntBuffer(), cents.asLongBuffer(),
+                    vendorIds.asIntBuffer(), descriptionIds.asIntBuffer(), rows);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            target.clear();
+            return false;
+        }
+    }
+
+    private static int readDictionary(ByteBuffer buffer, int position, int count, StringDictionary dictionary) {
+        for (int id = 0; id < count; id++) {
+            int length = buffer.getInt(position);
+            position += 4;
+            byte[] bytes = new byte[length];
+            buffer.get(position, bytes, 0, length);
+            position += length;
+            if (dictionary.intern(new String(bytes, StandardCharsets.UTF_8)) != id) {
+                throw new IllegalStateException("Duplicate dictionary entry in snapshot");
+            }
+        }
+        return position;
+    }
+
+    // Buffered channel writer that keeps a running CRC32C of everything written
+    private static final class SnapshotWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        private final CRC32C crc = new CRC32C();
+
+        SnapshotWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        // Make room for at least bytes more bytes and return the buffer
+        ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void finish() throws IOException {
+            flush();
+            buffer.putLong(crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+// Columnar in-memory store for the ledger.
+// Rows are kept in fixed-size segments where every field lives in its own primitive array:
+// epoch day, second of day, amount in cents and dictionary ids for vendor and description.
+// Reports scan these arrays directly instead of walking a list of Transaction objects.
+//
+// There is one writer at a time (the Ledger's write lock), but readers never lock: a row is only
+// published by the volatile size write after all of its columns are filled in, and a full segment
+// directory is replaced by a grown copy instead of being changed in place. A reader that reads
+// size() first therefore sees every row below it completely, however many rows are added meanwhile.
+public class LedgerStore {
+    public static final int SEGMENT_SHIFT = 16; // 65536 rows per segment
+    public static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    public static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    // One block of rows, stored column by column
+    public static final class Segment {
+        public final int[] epochDays = new int[SEGMENT_SIZE]; // Days since 1970-01-01
+        public final int[] secondsOfDay = new int[SEGMENT_SIZE]; // Seconds since midnight
+        public final long[] amountCents = new long[SEGMENT_SIZE]; // Amount in cents (negative for payments)
+        public final int[] vendorIds = new int[SEGMENT_SIZE]; // Id in the vendor dictionary
+        public final int[] descriptionIds = new int[SEGMENT_SIZE]; // Id in the description dictionary
+    }
+
+    private volatile Segment[] segments = new Segment[0]; // Copy-on-write segment directory
+    private volatile int size; // Number of published rows
+    private final StringDictionary vendors = new StringDictionary();
+    private final StringDictionary descriptions = new StringDictionary();
+
+    // Add a transaction to the end of the store and return its row number
+    public int add(Transaction transaction) {
+        return add(transaction.getEpochDay(),
+                transaction.getSecondOfDay(),
+                transaction.getDescription(),
+                transaction.getVendor(),
+                transaction.getAmountCents());
+    }
+
+    // Add a row from already decoded values and return its row number
+    public int add(int epochDay, int secondOfDay, String description, String vendor, long amountCents) {
+        return add(epochDay, secondOfDay, descriptions.intern(description), vendors.intern(vendor), amountCents);
+    }
+
+    // Add a row whose strings are already interned in this store's dictionaries
+    public int add(int epochDay, int secondOfDay, int descriptionId, int vendorId, long amountCents) {
+        int row = size;
+        int segmentIndex = row >>> SEGMENT_SHIFT;
+        Segment[] current = segments;
+        if (segmentIndex == current.length) {
+            current = Arrays.copyOf(current, segmentIndex + 1);
+            current[segmentIndex] = new Segment();
+            segments = current; // Publish the new directory before any row in it
+        }
+        Segment segment = current[segmentIndex];
+        int offset = row & SEGMENT_MASK;
+        segment.epochDays[offset] = epochDay;
+        segment.secondsOfDay[offset] = secondOfDay;
+        segment.amountCents[offset] = amountCents;
+        segment.vendorIds[offset] = vendorId;
+        segment.descriptionIds[offset] = descriptionId;
+        size = row + 1; // Publish the row
+        return row;
+    }
+
+    // Append every row of another store, remapping its dictionary ids into this store's dictionaries
+    public void appendAll(LedgerStore other) {
+        int[] vendorMap = new int[other.vendors.size()];
+        for (int id = 0; id < vendorMap.length; id++) {
+            vendorMap[id] = vendors.intern(other.vendors.get(id));
+        }
+        int[] descriptionMap = new int[other.descriptions.size()];
+        for (int id = 0; id < descriptionMap.length; id++) {
+            descriptionMap[id] = descriptions.intern(other.descriptions.get(id));
+        }
+        for (int s = 0; s < other.segmentCount(); s++) {
+            Segment segment = other.segment(s);
+            int length = other.segmentLength(s);
+            for (int i = 0; i < length; i++) {
+                add(segment.epochDays[i], segment.secondsOfDay[i], descriptionMap[segment.descriptionIds[i]],
+                        vendorMap[segment.vendorIds[i]], segment.amountCents[i]);
+            }
+        }
+    }
+
+    // Bulk-append count rows read column by column from the given buffers (used by the snapshot loader).
+    // Dictionary ids must already be valid in this store's dictionaries.
+    public void appendColumns(IntBuffer epochDays, IntBuffer secondsOfDay, LongBuffer amountCents,
+                              IntBuffer vendorIds, IntBuffer descriptionIds, int count) {
+        if ((size & SEGMENT_MASK) != 0) {
+            throw new IllegalStateException("Bulk append must start on a segment boundary");
+        }
+        int filled = size;
+        int end = filled + count;
+        while (filled < end) {
+            int segmentIndex = filled >>> SEGMENT_SHIFT;
+            Segment segment = new Segment();
+            int length = Math.min(SEGMENT_SIZE, end - filled);
+            epochDays.get(segment.epochDays, 0, length);
+            secondsOfDay.get(segment.secondsOfDay, 0, length);
+            amountCents.get(segment.amountCents, 0, length);
+            vendorIds.get(segment.vendorIds, 0, length);
+            descriptionIds.get(segment.descriptionIds, 0, length);
+            Segment[] grown = Arrays.copyOf(segments, segmentIndex + 1);
+            grown[segmentIndex] = segment;
+            segments = grown;
+            filled += length;
+            size = filled; // Publish the segment's rows
+        }
+    }
+
+    // Number of rows in the store
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Number of segments that hold at least one row
+    public int segmentCount() {
+        return (size + SEGMENT_MASK) >>> SEGMENT_SHIFT;
+    }
+
+    // Get a segment for a direct column scan
+    public Segment segment(int segmentIndex) {
+        return segments[segmentIndex];
+    }
+
+    // Number of used rows in the given segment
+    public int segmentLength(int segmentIndex) {
+        return Math.min(SEGMENT_SIZE, size - (segmentIndex << SEGMENT_SHIFT));
+    }
+
+    public StringDictionary getVendors() {
+        return vendors;
+    }
+
+    public StringDictionary getDescriptions() {
+        return descriptions;
+    }
+
+    // Row getters
+    public int getEpochDay(int row) {
+        return segments[row >>> SEGMENT_SHIFT].epochDays[row & SEGMENT_MASK];
+    }
+
+    public int getSecondOfDay(int row) {
+        return segments[row >>> SEGMENT_SHIFT].secondsOfDay[row & SEGMENT_MASK];
+    }
+
+    public long getAmountCents(int row) {
+        return segments[row >>> SEGMENT_SHIFT].amountCents[row & SEGMENT_MASK];
+    }
+
+    public int getVendorId(int row) {
+        return segments[row >>> SEGMENT_SHIFT].vendorIds[row & SEGMENT_MASK];
+    }
+
+    public int getDescriptionId(int row) {
+        return segments[row >>> SEGMENT_SHIFT].descriptionIds[row & SEGMENT_MASK];
+    }
+
+    public String getVendor(int row) {
+        return vendors.get(getVendorId(row));
+    }
+
+    public String getDescription(int row) {
+        return descriptions.get(getDescriptionId(row));
+    }
+
+    public double getAmount(int row) {
+        return getAmountCents(row) / 100.0;
+    }
+
+    // Date of the row as yyyy-MM-dd
+    public String getDate(int row) {
+        return DateTimeCodec.formatDate(getEpochDay(row));
+    }
+
+    // Time of the row as HH:mm:ss
+    public String getTime(int row) {
+        return DateTimeCodec.formatTime(getSecondOfDay(row));
+    }
+
+    // Rebuild a Transaction object for the given row
+    public Transaction toTransaction(int row) {
+        return Transaction.ofCents(getEpochDay(row), getSecondOfDay(row), getDescription(row), getVendor(row), getAmountCents(row));
+    }
+
+    // Same check as Transaction.matchesSearchTerm, done against the columns of a row
+    public boolean matchesSearchTerm(int row, String searchTerm, boolean caseSensitive) {
+        String search = caseSensitive ? searchTerm : searchTerm.toLowerCase();
+        String date = getDate(row);
+        String time = getTime(row);
+        String description = getDescription(row);
+        String vendor = getVendor(row);
+
+        return (caseSensitive ? date : date.toLowerCase()).contains(search) ||
+                (caseSensitive ? time : time.toLowerCase()).contains(search) ||
+                (caseSensitive ? description : description.toLowerCase()).contains(search) ||
+                (caseSensitive ? vendor : vendor.toLowerCase()).contains(search) ||
+                String.valueOf(getAmount(row)).contains(search);
+    }
+
+    // Format the row the same way Transaction.toString does
+    public String formatRow(int row) {
+        return String.format("%-10s %-8s %-30s %-20s %-10s",
+                getDate(row), getTime(row), getDescription(row), getVendor(row), Money.format(getAmountCents(row)));
+    }
+
+    // Remove every row from the store. Not safe while other threads are reading.
+    public void clear() {
+        size = 0;
+        segments = new Segment[0];
+        vendors.clear();
+        descriptions.clear();
+    }
+}
@@ -0,0 +1,76 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import javax.swing.table.AbstractTableModel;
+
+// Virtual table model over the column store.
+// The model only holds the row numbers of the current view (in display order); cell text is
+// formatted when the JTable asks for it, which it only does for the rows that are on screen.
+public class LedgerTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] COLUMNS = {"Date", "Time", "Description", "Vendor", "Amount"};
+    private static final SortIndex.Key[] SORT_KEYS = {SortIndex.Key.DATE, SortIndex.Key.TIME,
+            SortIndex.Key.DESCRIPTION, SortIndex.Key.VENDOR, SortIndex.Key.AMOUNT};
+
+    private final transient LedgerStore store;
+    private int[] rows = new int[0]; // Store row number of every table row
+
+    public LedgerTableModel(LedgerStore store) {
+        this.store = store;
+    }
+
+    // Replace the rows in view. Must be called on the event dispatch thread.
+    public void setRows(int[] rows) {
+        this.rows = rows;
+        fireTableDataChanged();
+    }
+
+    // Store row number shown at the given table row
+    public int getStoreRow(int tableRow) {
+        return rows[tableRow];
+    }
+
+    // Sort key of a column
+    public static SortIndex.Key sortKeyOf(int column) {
+        return SORT_KEYS[column];
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int tableRow, int column) {
+        int row = rows[tableRow];
+        switch (column) {
+            case 0:
+                return store.getDate(row);
+            case 1:
+                return store.getTime(row);
+            case 2:
+                return store.getDescription(row);
+            case 3:
+                return store.getVendor(row);
+            default:
+                return Money.format(store.getAmountCents(row));
+        }
+    }
+}
@@ -13,14 +13,27 @@ import java.util.Scanner;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Comparator;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 //// End of the imports or packages /////
 
 public class Main {
     private static final String CSV_FILE = "transactions.csv"; // Path to the CSV file
-    private static List<Transaction> transactions = new ArrayList<>(); // List to store transactions
+    private static final String SNAPSHOT_FILE = "transactions.snapshot"; // Binary copy of the ledger for fast startup
+    private static final String PARTITION_DIR = "partitions"; // Per-month files, used instead of CSV_FILE once migrated
+    private static final Ledger ledger = new Ledger(); // Every transaction plus the indexes kept over them
+    private static final LedgerStore store = ledger.getStore(); // Columnar store, scanned directly by the views
+    // How to load the CSV: "stream" (one thread), "parallel" (memory-mapped chunks on all cores) or "auto"
+    private static final String LOAD_MODE = System.getProperty("ledger.load", "auto");
+    private static final long PARALLEL_LOAD_THRESHOLD = 64L << 20; // Files above 64 MB load in parallel in auto mode
+    private static final LedgerPrinter printer = LedgerPrinter.console(store); // Buffered output for row listings
+    private static final ReportEngine reports = new ReportEngine(ledger); // Filtered, grouped reports over the ledger
+    // Rows per page of a listing; paging is on by default only when running in a terminal
+    private static final int PAGE_SIZE = Integer.getInteger("ledger.pageSize", System.console() != null && System.console().isTerminal() ? 100 : 0);
+    private static TransactionLog journal; // Where new transactions are appended: the CSV journal or the partitions
+    private static LedgerPartitions partitions; // Per-month files, null while the ledger is one flat CSV
+    private static volatile String sortCriteria; // Display order chosen in the GUI, null for insertion order
 
 
     private static void clearConsole() { // This is used for clearing console doesn't really work here
@@ -32,6 +45,9 @@ public class Main {
 // This is the start of our program //
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            System.exit(runHeadless(args)); // Scripted command, no menus (see HeadlessCli)
+        }
         clearConsole();
         printLineBorder();
         System.out.println("|          Welcome to the Accounting Ledger!          |");
@@ -48,6 +64,8 @@ public class Main {
 
         int modeChoice = scanner.nextInt();
         scanner.nextLine();
+        printer.setPager(scanner, PAGE_SIZE);
+        openJournal(); // Repair a half-written last line, if any, before loading
         loadTransactions(); // Load existing transactions from CSV
 
         switch (modeChoice) {
@@ -65,6 +83,19 @@ public class Main {
         }
     }
 
+    // Run one headless command and return its exit status. Command output goes to stdout through the
+    // printer; everything printed through System.out (load errors, skipped lines) goes to stderr instead.
+    private static int runHeadless(String[] args) {
+        System.setOut(System.err);
+        openJournal();
+        try { // Each command loads only the rows it needs
+            return new HeadlessCli(ledger, journal, partitions, Main::loadTransactions, printer,
+                    Paths.get(CSV_FILE), Paths.get(SNAPSHOT_FILE), Paths.get(PARTITION_DIR)).run(args);
+        } finally {
+            closeJournal();
+        }
+    }
+
     private static void runCLI(Scanner scanner) {
         while (true) {
             printLineBorder();
@@ -73,9 +104,10 @@ public class Main {
             System.out.println("| 1. Add Deposit                             |");
             System.out.println("| 2. Make Payment                            |");
             System.out.println("| 3. Ledger                                  |");
-            System.out.println("| 4. Exit                                    |");
+            System.out.println("| 4. Stats                                   |");
+            System.out.println("| 5. Exit                                    |");
             printLineBorder();
-            System.out.print("Select an option (1-4): ");
+            System.out.print("Select an option (1-5): ");
 
             int choice = scanner.nextInt();
             scanner.nextLine(); // Consume newline character
@@ -91,6 +123,11 @@ public class Main {
                     runLedgerMenu(scanner); //  Calling Function for Open ledger menu
                     break;
                 case 4:
+                    showStats(); //  Calling Function for Load, append, search and report metrics
+                    break;
+                case 5:
+                    closeJournal(); // Make sure every transaction is on disk
+                    saveSnapshot(); // Speeds up the next startup
                     System.out.println("Thank you for using the Accounting Ledger. Goodbye!");
                     System.exit(0);
                 default:
@@ -139,23 +176,32 @@ public class Main {
 
 
     private static void viewDeposits() {
-        System.out.println("--- Deposits ---");
-        System.out.printf("%-10s %-8s %-30s %-20s %-10s%n", "Date", "Time", "Description", "Vendor", "Amount");
-        System.out.println("-----------------------------------------------------------------------");
-        for (Transaction transaction : transactions) {
-            if (transaction.getAmount() > 0) {
-                System.out.println(transaction);
-            }
-        }
+        printer.begin();
+        printer.println("--- Deposits ---");
+        printer.println(String.format("%-10s %-8s %-30s %-20s %-10s", "Date", "Time", "Description", "Vendor", "Amount"));
+        printer.println("-----------------------------------------------------------------------");
+        printRowsWithSign(1);
+        printer.flush();
     }
 
     private static void viewPayments() {
-        System.out.println("--- Payments ---");
-        System.out.printf("%-10s %-8s %-30s %-20s %-10s%n", "Date", "Time", "Description", "Vendor", "Amount");
-        System.out.println("-----------------------------------------------------------------------");
-        for (Transaction transaction : transactions) {
-            if (transaction.getAmount() < 0) {
-                System.out.println(transaction);
+        printer.begin();
+        printer.println("--- Payments ---");
+        printer.println(String.format("%-10s %-8s %-30s %-20s %-10s", "Date", "Time", "Description", "Vendor", "Amount"));
+        printer.println("-----------------------------------------------------------------------");
+        printRowsWithSign(-1);
+        printer.flush();
+    }
+
+    // Print every row whose amount has the given sign, scanning the amount column directly
+    private static void printRowsWithSign(int sign) {
+        for (int s = 0; s < store.segmentCount(); s++) {
+            long[] amounts = store.segment(s).amountCents;
+            int length = store.segmentLength(s);
+            for (int i = 0; i < length; i++) {
+                if (Long.signum(amounts[i]) == sign && !printer.row((s << LedgerStore.SEGMENT_SHIFT) + i, LedgerPrinter.Style.PLAIN)) {
+                    return;
+                }
             }
         }
     }
@@ -171,9 +217,11 @@ public class Main {
             System.out.println("| 3. Year to Date Report                     |");
             System.out.println("| 4. Previous Year Report                    |");
             System.out.println("| 5. Search by Vendor                        |");
-            System.out.println("| 6. Back to Ledger Menu                     |");
+            System.out.println("| 6. Custom Date Range Report                |");
+            System.out.println("| 7. Custom Report                           |");
+            System.out.println("| 8. Back to Ledger Menu                     |");
             printLineBorder();
-            System.out.print("Select an option (1-6): ");
+            System.out.print("Select an option (1-8): ");
 
             int choice = scanner.nextInt();
             scanner.nextLine();
@@ -195,6 +243,12 @@ public class Main {
                     searchByVendor(scanner); //  Calling Function for Search by vendor
                     break;
                 case 6:
+                    generateCustomRangeReport(scanner); //  Calling Function for Custom date range report
+                    break;
+                case 7:
+                    generateCustomReport(scanner); //  Calling Function for Custom filtered and grouped report
+                    break;
+                case 8:
                     return;
                 default:
                     System.out.println("Invalid option, please try again.");
@@ -202,6 +256,22 @@ public class Main {
         }
     }
 
+    // Count, latency and volume of every kind of operation since startup, plus the result cache
+    private static void showStats() {
+        System.out.println("--- Stats ---");
+        if (!Metrics.ENABLED) {
+            System.out.println("Metrics are turned off (-Dledger.metrics=false).");
+            return;
+        }
+        for (String[] line : Metrics.table()) {
+            System.out.printf("%-10s %8s %8s %10s %10s %10s %10s %10s %12s %14s%n", (Object[]) line);
+        }
+        System.out.println();
+        for (String[] line : Metrics.cacheTable(ledger.getCache())) {
+            System.out.printf("%-10s %8s %10s %10s %14s %10s %14s%n", (Object[]) line);
+        }
+    }
+
     private static void printLineBorder() {
         System.out.println("+--------------------------------------------+");
     }
@@ -209,133 +279,177 @@ public class Main {
 
     private static void generateMonthToDateReport() {
         System.out.println("--- Month to Date Report ---");
-        Calendar calendar = Calendar.getInstance();
-        int month = calendar.get(Calendar.MONTH) + 1; // Months are 0-based in Calendar
-        int year = calendar.get(Calendar.YEAR);
-        double totalIncome = 0.0;
-        double totalExpenses = 0.0;
-
-        System.out.printf("%-10s %-8s %-30s %-20s %-10s%n", "Date", "Time", "Description", "Vendor", "Amount");
-        System.out.println("----------------------------------------------------------------------");
-
-        for (Transaction transaction : transactions) {
-            if (transaction.getDate().startsWith(year + "-" + String.format("%02d", month))) {
-                System.out.printf("%-10s %-8s %-30s %-20s $%-10.2f%n",
-                        transaction.getDate(),
-                        transaction.getTime(),
-                        transaction.getDescription(),
-                        transaction.getVendor(),
-                        transaction.getAmount());
-
-                if (transaction.getAmount() > 0) {
-                    totalIncome += transaction.getAmount();
-                } else {
-                    totalExpenses += Math.abs(transaction.getAmount());
-                }
-            }
-        }
-
-        System.out.println("----------------------------------------------------------------------");
-        System.out.printf("Total Income: $%.2f%n", totalIncome);
-        System.out.printf("Total Expenses: $%.2f%n", totalExpenses);
+        printPeriodReport(ReportQuery.monthToDate(DateTimeCodec.today()).groupBy(ReportQuery.GroupBy.DAY));
     }
 
     private static void generatePreviousMonthReport() {
         System.out.println("--- Previous Month Report ---");
-        Calendar calendar = Calendar.getInstance();
-        calendar.add(Calendar.MONTH, -1); // Move to the previous month
-        int month = calendar.get(Calendar.MONTH) + 1; // Months are 0-based in Calendar
-        int year = calendar.get(Calendar.YEAR);
-        double totalIncome = 0.0;
-        double totalExpenses = 0.0;
+        printPeriodReport(ReportQuery.previousMonth(DateTimeCodec.today()).groupBy(ReportQuery.GroupBy.DAY));
+    }
 
-        System.out.printf("%-10s %-8s %-30s %-20s %-10s%n", "Date", "Time", "Description", "Vendor", "Amount");
-        System.out.println("----------------------------------------------------------------------");
-
-        for (Transaction transaction : transactions) {
-            if (transaction.getDate().startsWith(year + "-" + String.format("%02d", month))) {
-                System.out.printf("%-10s %-8s %-30s %-20s $%-10.2f%n",
-                        transaction.getDate(),
-                        transaction.getTime(),
-                        transaction.getDescription(),
-                        transaction.getVendor(),
-                        transaction.getAmount());
-
-                if (transaction.getAmount() > 0) {
-                    totalIncome += transaction.getAmount();
-                } else {
-                    totalExpenses += Math.abs(transaction.getAmount());
+    private static void generateYearToDateReport() {
+        System.out.println("--- Year to Date Report ---");
+        printPeriodReport(ReportQuery.yearToDate(DateTimeCodec.today()).groupBy(ReportQuery.GroupBy.MONTH));
+    }
+
+    private static void generatePreviousYearReport() {
+        System.out.println("--- Previous Year Report ---");
+        printPeriodReport(ReportQuery.previousYear(DateTimeCodec.today()).groupBy(ReportQuery.GroupBy.MONTH));
+    }
+
+    // Ask for a date range, the last N days or a week and print the report for it
+    private static void generateCustomRangeReport(Scanner scanner) {
+        System.out.println("--- Custom Date Range Report ---");
+        System.out.println("1. Between two dates");
+        System.out.println("2. Last N days");
+        System.out.println("3. Week of a date");
+        System.out.print("Select an option (1-3): ");
+        int choice = scanner.nextInt();
+        scanner.nextLine();
+
+        int today = DateTimeCodec.today();
+        switch (choice) {
+            case 1:
+                int fromDay = readDate(scanner, "Enter start date (yyyy-MM-dd): ");
+                int toDay = readDate(scanner, "Enter end date (yyyy-MM-dd): ");
+                if (fromDay != DateTimeCodec.INVALID && toDay != DateTimeCodec.INVALID) {
+                    printPeriodReport(rangeQuery(fromDay, toDay));
                 }
-            }
+                break;
+            case 2:
+                System.out.print("Enter number of days: ");
+                int days = scanner.nextInt();
+                scanner.nextLine();
+                printPeriodReport(rangeQuery(today - days + 1, today));
+                break;
+            case 3:
+                int day = readDate(scanner, "Enter any date in the week (yyyy-MM-dd): ");
+                if (day != DateTimeCodec.INVALID) {
+                    int monday = day - Math.floorMod(day + 3, 7); // 1970-01-01 was a Thursday
+                    printPeriodReport(rangeQuery(monday, monday + 6));
+                }
+                break;
+            default:
+                System.out.println("Invalid option, please try again.");
         }
+    }
 
-        System.out.println("----------------------------------------------------------------------");
-        System.out.printf("Total Income: $%.2f%n", totalIncome);
-        System.out.printf("Total Expenses: $%.2f%n", totalExpenses);
+    // Report over the days fromDay to toDay (inclusive), grouped by day for up to two months and by
+    // month beyond that
+    private static ReportQuery rangeQuery(int fromDay, int toDay) {
+        ReportQuery.GroupBy groupBy = (long) toDay - fromDay < 62 ? ReportQuery.GroupBy.DAY : ReportQuery.GroupBy.MONTH;
+        return new ReportQuery().between(fromDay, toDay).groupBy(groupBy);
     }
 
-    private static void generateYearToDateReport() {
-        System.out.println("--- Year to Date Report ---");
-        Calendar calendar = Calendar.getInstance();
-        int year = calendar.get(Calendar.YEAR);
-        double totalIncome = 0.0;
-        double totalExpenses = 0.0;
+    // Prompt for a yyyy-MM-dd date and return it as an epoch day, or INVALID after printing an error
+    private static int readDate(Scanner scanner, String prompt) {
+        System.out.print(prompt);
+        int day = DateTimeCodec.parseDate(scanner.nextLine().trim());
+        if (day == DateTimeCodec.INVALID) {
+            System.out.println("Invalid date format. Expected format: yyyy-MM-dd");
+        }
+        return day;
+    }
 
-        System.out.printf("%-10s %-8s %-30s %-20s %-10s%n", "Date", "Time", "Description", "Vendor", "Amount");
-        System.out.println("----------------------------------------------------------------------");
-
-        for (Transaction transaction : transactions) {
-            if (transaction.getDate().startsWith(String.valueOf(year))) {
-                System.out.printf("%-10s %-8s %-30s %-20s $%-10.2f%n",
-                        transaction.getDate(),
-                        transaction.getTime(),
-                        transaction.getDescription(),
-                        transaction.getVendor(),
-                        transaction.getAmount());
-
-                if (transaction.getAmount() > 0) {
-                    totalIncome += transaction.getAmount();
-                } else {
-                    totalExpenses += Math.abs(transaction.getAmount());
-                }
+    // Ask for filters and a grouping, then print one line per group with count, sum, min, max and average
+    private static void generateCustomReport(Scanner scanner) {
+        System.out.println("--- Custom Report ---");
+        ReportQuery query = new ReportQuery();
+
+        System.out.print("Enter start date (yyyy-MM-dd, blank for all): ");
+        String from = scanner.nextLine().trim();
+        System.out.print("Enter end date (yyyy-MM-dd, blank for all): ");
+        String to = scanner.nextLine().trim();
+        if (!from.isEmpty() || !to.isEmpty()) {
+            int fromDay = from.isEmpty() ? query.getFromDay() : DateTimeCodec.parseDate(from);
+            int toDay = to.isEmpty() ? query.getToDay() : DateTimeCodec.parseDate(to);
+            if (!from.isEmpty() && fromDay == DateTimeCodec.INVALID || !to.isEmpty() && toDay == DateTimeCodec.INVALID) {
+                System.out.println("Invalid date format. Expected format: yyyy-MM-dd");
+                return;
             }
+            query.between(fromDay, toDay);
         }
 
-        System.out.println("----------------------------------------------------------------------");
-        System.out.printf("Total Income: $%.2f%n", totalIncome);
-        System.out.printf("Total Expenses: $%.2f%n", totalExpenses);
+        System.out.print("Enter vendor (blank for any): ");
+        String vendor = scanner.nextLine().trim();
+        if (!vendor.isEmpty()) {
+            query.vendor(vendor);
+        }
+
+        System.out.print("Include (1. All, 2. Income, 3. Expenses): ");
+        String sign = scanner.nextLine().trim();
+        query.sign(sign.equals("2") ? ReportQuery.Sign.INCOME : sign.equals("3") ? ReportQuery.Sign.EXPENSES : ReportQuery.Sign.ALL);
+
+        System.out.print("Enter minimum amount (blank for none): ");
+        String min = scanner.nextLine().trim();
+        System.out.print("Enter maximum amount (blank for none): ");
+        String max = scanner.nextLine().trim();
+        long minCents = min.isEmpty() ? Long.MIN_VALUE : Money.parse(min);
+        long maxCents = max.isEmpty() ? Long.MAX_VALUE : Money.parse(max);
+        if (!min.isEmpty() && minCents == Money.INVALID || !max.isEmpty() && maxCents == Money.INVALID) {
+            System.out.println("Invalid amount. Expected a number such as 12.34");
+            return;
+        }
+        query.amountBetween(minCents, maxCents);
+
+        System.out.print("Group by (1. None, 2. Day, 3. Week, 4. Month, 5. Year, 6. Vendor): ");
+        String group = scanner.nextLine().trim();
+        ReportQuery.GroupBy[] groupings = ReportQuery.GroupBy.values();
+        int groupChoice = group.matches("[1-6]") ? Integer.parseInt(group) : 1;
+        query.groupBy(groupings[groupChoice - 1]);
+
+        printReportResult(reports.run(query));
     }
 
-    private static void generatePreviousYearReport() {
-        System.out.println("--- Previous Year Report ---");
-        Calendar calendar = Calendar.getInstance();
-        int year = calendar.get(Calendar.YEAR) - 1;
-        double totalIncome = 0.0;
-        double totalExpenses = 0.0;
+    // Print the groups of a report result followed by the total over every matching row
+    private static void printReportResult(ReportEngine.Result result) {
+        String format = "%-24s %10s %14s %12s %12s %12s";
+        printer.begin();
+        printer.println(String.format(format, "Group", "Count", "Sum", "Min", "Max", "Average"));
+        printer.println("----------------------------------------------------------------------------------------");
+        for (ReportEngine.Group group : result.groups) {
+            printer.println(formatAggregate(format, group.label, group.aggregate));
+        }
+        printer.println("----------------------------------------------------------------------------------------");
+        printer.println(formatAggregate(format, "Total", result.total));
+        printer.flush();
+    }
 
-        System.out.printf("%-10s %-8s %-30s %-20s %-10s%n", "Date", "Time", "Description", "Vendor", "Amount");
-        System.out.println("----------------------------------------------------------------------");
-
-        for (Transaction transaction : transactions) {
-            if (transaction.getDate().startsWith(String.valueOf(year))) {
-                System.out.printf("%-10s %-8s %-30s %-20s $%-10.2f%n",
-                        transaction.getDate(),
-                        transaction.getTime(),
-                        transaction.getDescription(),
-                        transaction.getVendor(),
-                        transaction.getAmount());
-
-                if (transaction.getAmount() > 0) {
-                    totalIncome += transaction.getAmount();
-                } else {
-                    totalExpenses += Math.abs(transaction.getAmount());
-                }
-            }
+    private static String formatAggregate(String format, String label, ReportEngine.Aggregate aggregate) {
+        return String.format(format, label, aggregate.getCount(), Money.format(aggregate.getSum()),
+                Money.format(aggregate.getMin()), Money.format(aggregate.getMax()), Money.format(aggregate.getAverage()));
+    }
+
+    // Print a date range report through the report engine, like the custom report, followed by the
+    // income and expense totals of the range
+    private static void printPeriodReport(ReportQuery query) {
+        printReportResult(reports.run(query));
+        printer.begin();
+        printer.print(formatPeriodTotals(query.getFromDay(), query.getToDay()));
+        printer.flush();
+    }
+
+    // Build the report text for the days fromDay to toDay (inclusive), for the GUI
+    private static String formatPeriodReport(int fromDay, int toDay) {
+        Metrics.OperationEvent event = Metrics.REPORT.begin();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-10s %-8s %-30s %-20s %-10s", "Date", "Time", "Description", "Vendor", "Amount")).append(System.lineSeparator());
+        sb.append("----------------------------------------------------------------------").append(System.lineSeparator());
+        int[] rows = ledger.rowsBetween(fromDay, toDay);
+        for (int row : rows) {
+            sb.append(printer.format(row, LedgerPrinter.Style.REPORT)).append(System.lineSeparator());
         }
+        sb.append("----------------------------------------------------------------------").append(System.lineSeparator());
+        sb.append(formatPeriodTotals(fromDay, toDay));
+        Metrics.REPORT.end(event, rows.length, 0);
+        return sb.toString();
+    }
 
-        System.out.println("----------------------------------------------------------------------");
-        System.out.printf("Total Income: $%.2f%n", totalIncome);
-        System.out.printf("Total Expenses: $%.2f%n", totalExpenses);
+    // Income and expense lines for a report. Totals come from the running totals index instead of the rows.
+    private static String formatPeriodTotals(int fromDay, int toDay) {
+        TotalsIndex.PeriodTotals totals = ledger.read(() -> ledger.getTotals().getRangeTotals(fromDay, toDay));
+        return "Total Income: " + Money.formatDollars(totals.income) + System.lineSeparator()
+                + "Total Expenses: " + Money.formatDollars(-totals.expenses) + System.lineSeparator();
     }
 
 
@@ -347,13 +461,13 @@ public class Main {
         System.out.printf("| %-10s | %-8s | %-30s | %-20s | %-10s |%n", "Date", "Time", "Description", "Vendor", "Amount");
         printLineBorder();
 
-
-        for (Transaction transaction : transactions) {
-            System.out.printf("| %-10s | %-8s | %-30s | %-20s | %-10.2f |%n",
-                    transaction.getDate(), transaction.getTime(),
-                    transaction.getDescription(), transaction.getVendor(),
-                    transaction.getAmount());
+        printer.begin();
+        for (int row = 0; row < store.size(); row++) {
+            if (!printer.row(row, LedgerPrinter.Style.BOXED)) {
+                break;
+            }
         }
+        printer.flush();
 
         printLineBorder();
     }
@@ -368,89 +482,184 @@ public class Main {
         System.out.printf("%-10s %-8s %-30s %-20s %-10s%n", "Date", "Time", "Description", "Vendor", "Amount");
         System.out.println("-----------------------------------------------------------------------");
 
-        for (Transaction transaction : transactions) {
-            if (transaction.getVendor().toLowerCase().contains(vendorName)) {
-                found = true;
-                System.out.println(transaction);
+        // Match against the distinct vendor names, then expand only their posting lists
+        VendorIndex vendors = ledger.getVendors();
+        int[] vendorIds = ledger.readLocked(() -> vendors.findVendors(vendorName));
+        printer.begin();
+        for (int row : ledger.readLocked(() -> vendors.rowsOf(vendorIds))) {
+            found = true;
+            if (!printer.row(row, LedgerPrinter.Style.PLAIN)) {
+                break;
             }
         }
+        printer.flush();
 
         if (!found) {
             System.out.println("No transactions found for vendor: " + vendorName);
+        } else {
+            // Per-vendor totals are precomputed by the index
+            long[] summary = ledger.read(() -> {
+                long[] sums = new long[3]; // Count, income, expenses
+                for (int vendorId : vendorIds) {
+                    sums[0] += vendors.getCount(vendorId);
+                    sums[1] += vendors.getIncome(vendorId);
+                    sums[2] += vendors.getExpenses(vendorId);
+                }
+                return sums;
+            });
+            System.out.println("-----------------------------------------------------------------------");
+            System.out.println("Transactions: " + summary[0]);
+            System.out.println("Total Income: " + Money.formatDollars(summary[1]));
+            System.out.println("Total Expenses: " + Money.formatDollars(-summary[2]));
         }
     }
 
 
     private static void addDeposit(Scanner scanner) {
         System.out.print("Enter deposit amount: ");
-        double amount = scanner.nextDouble();
-        scanner.nextLine(); // Consume newline
+        long amount = readAmount(scanner);
+        if (amount == Money.INVALID) {
+            return;
+        }
         System.out.print("Enter description: ");
         String description = scanner.nextLine();
         System.out.print("Enter vendor: ");
         String vendor = scanner.nextLine();
 
         // Create a new transaction and save it to the CSV file
-        Transaction transaction = new Transaction(getCurrentDate(), getCurrentTime(), description, vendor, amount);
-        transactions.add(transaction);
+        Transaction transaction = Transaction.ofCents(DateTimeCodec.today(), DateTimeCodec.nowSecondOfDay(), description, vendor, amount);
+        ledger.add(transaction);
         saveTransactionToCSV(transaction);
         System.out.println("Deposit added successfully.");
     }
 
     private static void addPayment(Scanner scanner) {
         System.out.print("Enter payment amount: ");
-        double amount = scanner.nextDouble();
-        scanner.nextLine(); // Consume newline
+        long amount = readAmount(scanner);
+        if (amount == Money.INVALID) {
+            return;
+        }
         System.out.print("Enter description: ");
         String description = scanner.nextLine();
         System.out.print("Enter vendor: ");
         String vendor = scanner.nextLine();
 
         // Create a new transaction and save it to the CSV file
-        Transaction transaction = new Transaction(getCurrentDate(), getCurrentTime(), description, vendor, -amount);
-        transactions.add(transaction);
+        Transaction transaction = Transaction.ofCents(DateTimeCodec.today(), DateTimeCodec.nowSecondOfDay(), description, vendor, -amount);
+        ledger.add(transaction);
         saveTransactionToCSV(transaction);
         System.out.println("Payment added successfully.");
     }
 
+    // Read an amount line and return it in cents, or INVALID after printing an error
+    private static long readAmount(Scanner scanner) {
+        long amount = Money.parse(scanner.nextLine().trim());
+        if (amount == Money.INVALID) {
+            System.out.println("Invalid amount. Expected a number such as 12.34");
+        }
+        return amount;
+    }
+
 
 
+    // Load every transaction for the interactive modes, reporting a failure and carrying on with
+    // whatever was loaded
     private static void loadTransactions() {
-        try (BufferedReader br = new BufferedReader(new FileReader(CSV_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length == 5) {
-                    String date = parts[0];
-                    String time = parts[1];
-                    String description = parts[2];
-                    String vendor = parts[3];
-                    double amount = Double.parseDouble(parts[4]);
-                    transactions.add(new Transaction(date, time, description, vendor, amount));
-                }
-            }
+        try {
+            loadTransactions(Integer.MIN_VALUE, Integer.MAX_VALUE);
         } catch (IOException e) {
             System.out.println("Error loading transactions: " + e.getMessage());
         }
     }
 
+    // Load at least the transactions dated fromDay to toDay. Partitioned ledgers only read the months
+    // that overlap the range; a flat CSV is always read whole. The indexes are brought up to date
+    // even if the load fails part way.
+    private static void loadTransactions(int fromDay, int toDay) throws IOException {
+        Metrics.OperationEvent event = Metrics.LOAD.begin();
+        int before = store.size();
+        long bytes = 0;
+        try {
+            bytes = loadRows(fromDay, toDay);
+        } finally {
+            ledger.refreshIndexes(); // Build the indexes over everything that was loaded
+            Metrics.LOAD.end(event, store.size() - before, bytes);
+        }
+    }
+
+    // Returns the number of bytes read
+    private static long loadRows(int fromDay, int toDay) throws IOException {
+        if (partitions != null) {
+            partitions.load(store, fromDay, toDay, ForkJoinPool.commonPool()); // Month files in parallel
+            return partitions.bytesOverlapping(fromDay, toDay);
+        }
+        if (LedgerSnapshot.read(Paths.get(SNAPSHOT_FILE), Paths.get(CSV_FILE), store)) {
+            return Files.size(Paths.get(SNAPSHOT_FILE)); // Snapshot is up to date with the CSV, no need to parse it
+        }
+        Path path = Paths.get(CSV_FILE);
+        boolean parallel = LOAD_MODE.equals("parallel")
+                || (LOAD_MODE.equals("auto") && Files.size(path) > PARALLEL_LOAD_THRESHOLD);
+        if (parallel) {
+            LedgerCsvParser.loadParallel(path, store, ForkJoinPool.commonPool()); // Memory-mapped chunks on every core
+        } else {
+            new LedgerCsvParser(store).load(path); // Byte-level parser, decodes rows straight into the store
+        }
+        return Files.size(path);
+    }
+
     private static void saveTransactionToCSV(Transaction transaction) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(CSV_FILE, true))) {
-            bw.write(transaction.toCSV());
-            bw.newLine();
+        try {
+            if (journal == null) {
+                throw new IOException("Journal is not open");
+            }
+            journal.append(transaction); // Group-committed through the open journal channel
         } catch (IOException e) {
             System.out.println("Error saving transaction: " + e.getMessage());
         }
     }
 
-    private static String getCurrentDate() {
-        return new SimpleDateFormat("yyyy-MM-dd").format(System.currentTimeMillis());
+    // Open the partitions if the ledger has been migrated to them, otherwise the CSV as an
+    // append-only journal, recovering either first if the last write was interrupted
+    private static void openJournal() {
+        boolean first = journal == null;
+        try {
+            if (LedgerPartitions.exists(Paths.get(PARTITION_DIR))) {
+                partitions = LedgerPartitions.open(Paths.get(PARTITION_DIR));
+                journal = partitions;
+            } else {
+                journal = LedgerJournal.open(Paths.get(CSV_FILE));
+            }
+            if (first) {
+                Runtime.getRuntime().addShutdownHook(new Thread(Main::closeJournal)); // Flush on any exit
+            }
+        } catch (IOException e) {
+            System.out.println("Error opening journal: " + e.getMessage());
+        }
     }
 
-    private static String getCurrentTime() {
-        return new SimpleDateFormat("HH:mm:ss").format(System.currentTimeMillis());
+    // Flush and close the journal, forcing any pending transactions to disk
+    private static void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.out.println("Error closing journal: " + e.getMessage());
+        }
     }
 
+    // Write a binary snapshot of the ledger so the next startup can skip parsing the CSV
+    private static void saveSnapshot() {
+        if (partitions != null) {
+            return; // The snapshot stands in for the flat CSV only
+        }
+        try {
+            LedgerSnapshot.write(store, Paths.get(SNAPSHOT_FILE), Paths.get(CSV_FILE));
+        } catch (IOException e) {
+            System.out.println("Error saving snapshot: " + e.getMessage());
+        }
+    }
 
     // This is the end of our program //
 
@@ -487,7 +696,9 @@ public class Main {
                     searchTransactions(scanner); // Search for transactions
                     break;
                 case 5:
+                    closeJournal();
                     saveTransactions(); // Save transactions before exiting
+                    saveSnapshot();
                     System.out.println("Thank you for using the Accounting Ledger. Goodbye!");
                     System.exit(0);
                 default:
@@ -507,7 +718,7 @@ public class Main {
         frame.getContentPane().setBackground(new Color(240, 242, 245));
 
         JPanel panel = new JPanel();
-        panel.setLayout(new GridLayout(7, 1)); // Increased rows for the dropdown
+        panel.setLayout(new GridLayout(8, 1)); // Increased rows for the dropdown
         panel.setBackground(new Color(240, 242, 245)); // Match panel background with frame
         panel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20)); // Padding around the panel
 
@@ -525,20 +736,24 @@ public class Main {
         JButton addButton = createStyledButton("Add Deposit");
         JButton totalsButton = createStyledButton("View Income/Expense Totals / Reports");
         JButton searchButton = createStyledButton("Search Transactions");
+        JButton rangeButton = createStyledButton("Custom Date Range Report");
         JButton exitButton = createStyledButton("Exit");
 
         // Action listeners for button clicks
-        viewButton.addActionListener(e -> JOptionPane.showMessageDialog(frame, getTransactions()));
+        viewButton.addActionListener(e -> showTransactionTable(frame, "Transactions", null));
         sortButton.addActionListener(e -> {
             String selectedOption = (String) comboBox.getSelectedItem();
-            sortTransactions(selectedOption); // Sort based on dropdown selection
-            JOptionPane.showMessageDialog(frame, getTransactions()); // Show sorted transactions
+            sortTransactions(selectedOption.substring("Sort by ".length())); // Sort based on dropdown selection
+            showTransactionTable(frame, "Transactions", null); // Show sorted transactions
         });
         addButton.addActionListener(e -> addTransactionGUI(frame));
         totalsButton.addActionListener(e -> JOptionPane.showMessageDialog(frame, getTotals()));
         searchButton.addActionListener(e -> searchTransactionsGUI(frame));
+        rangeButton.addActionListener(e -> customRangeReportGUI(frame));
         exitButton.addActionListener(e -> {
+            closeJournal();
             saveTransactions(); // Save transactions before exiting
+            saveSnapshot();
             System.exit(0);
         });
 
@@ -549,6 +764,7 @@ public class Main {
         panel.add(addButton);
         panel.add(totalsButton);
         panel.add(searchButton);
+        panel.add(rangeButton);
         panel.add(exitButton);
 
         frame.getContentPane().add(panel);
@@ -596,29 +812,33 @@ public class Main {
         if (result == JOptionPane.OK_OPTION) {
             String selectedOption = (String) comboBox.getSelectedItem();
             sortTransactions(selectedOption); // Sort the transactions
-            JOptionPane.showMessageDialog(frame, getTransactions()); // Display the sorted transactions
+            showTransactionTable(frame, "Transactions", null); // Display the sorted transactions
         }
     }
 
-    // Sort the transactions based on the selected criteria
+    // Open a table of the given rows (null for every transaction) in the current sort order.
+    // Only the visible rows are formatted, so this works the same for ten rows or ten million.
+    private static void showTransactionTable(JFrame frame, String title, int[] rows) {
+        TransactionTable.show(frame, title, ledger, rows, SortIndex.keyOf(sortCriteria));
+    }
+
+    // Sort the transactions based on the selected criteria.
+    // Rows are never moved; the criteria only changes the order in which they are displayed.
     private static void sortTransactions(String criteria) {
-        switch (criteria) {
-            case "Date":
-                transactions.sort(Comparator.comparing(Transaction::getDate));
-                break;
-            case "Time":
-                transactions.sort(Comparator.comparing(Transaction::getTime));
-                break;
-            case "Amount":
-                transactions.sort(Comparator.comparingDouble(Transaction::getAmount));
-                break;
-            case "Vendor":
-                transactions.sort(Comparator.comparing(Transaction::getVendor));
-                break;
-            case "Description":
-                transactions.sort(Comparator.comparing(Transaction::getDescription));
-                break;
+        sortCriteria = criteria;
+    }
+
+    // Row numbers in the current display order
+    private static int[] displayOrder() {
+        SortIndex.Key key = SortIndex.keyOf(sortCriteria);
+        if (key != null) {
+            return ledger.order(key); // Precomputed permutation, nothing is re-sorted
+        }
+        int[] order = new int[store.size()]; // Insertion order
+        for (int row = 0; row < order.length; row++) {
+            order[row] = row;
         }
+        return order;
     }
 
     // Search transactions in CLI
@@ -638,21 +858,19 @@ public class Main {
         String caseSensitiveInput = scanner.nextLine().trim().toLowerCase();
         boolean isCaseSensitive = caseSensitiveInput.equals("yes");
 
-        List<Transaction> foundTransactions = new ArrayList<>();
+        int[] foundRows = ledger.search(searchTerm, isCaseSensitive); // Pass the case sensitivity
 
-        for (Transaction t : transactions) {
-            if (t.matchesSearchTerm(searchTerm, isCaseSensitive)) { // Pass the case sensitivity
-                foundTransactions.add(t);
-            }
-        }
-
-        if (foundTransactions.isEmpty()) {
+        if (foundRows.length == 0) {
             System.out.println("No transactions found matching the search term: " + searchTerm);
         } else {
             System.out.println("--- Search Results ---");
-            for (Transaction t : foundTransactions) {
-                System.out.println(t);
+            printer.begin();
+            for (int row : foundRows) {
+                if (!printer.row(row, LedgerPrinter.Style.PLAIN)) {
+                    break;
+                }
             }
+            printer.flush();
         }
     }
 
@@ -681,78 +899,82 @@ public class Main {
                 return; // Exit if empty
             }
 
-            List<Transaction> foundTransactions = new ArrayList<>();
             boolean isCaseSensitive = caseSensitiveCheckBox.isSelected(); // Get case sensitivity preference
-
-            for (Transaction t : transactions) {
-                if (t.matchesSearchTerm(searchTerm, isCaseSensitive)) {
-                    foundTransactions.add(t);
-                }
-            }
+            int[] foundRows = ledger.search(searchTerm, isCaseSensitive);
 
             // Display results
-            if (foundTransactions.isEmpty()) {
+            if (foundRows.length == 0) {
                 JOptionPane.showMessageDialog(frame, "No transactions found matching the search term: " + searchTerm);
             } else {
-                StringBuilder sb = new StringBuilder("--- Search Results ---\n");
-                for (Transaction t : foundTransactions) {
-                    sb.append(t.toString()).append("\n");
-                }
-                JOptionPane.showMessageDialog(frame, sb.toString());
+                showTransactionTable(frame, "Search Results", foundRows);
+            }
+        }
+    }
+
+    // GUI custom date range report
+    private static void customRangeReportGUI(JFrame frame) {
+        JTextField fromField = new JTextField(10);
+        JTextField toField = new JTextField(10);
+
+        JPanel panel = new JPanel();
+        panel.setLayout(new GridLayout(2, 2));
+        panel.add(new JLabel("From (YYYY-MM-DD):"));
+        panel.add(fromField);
+        panel.add(new JLabel("To (YYYY-MM-DD):"));
+        panel.add(toField);
+
+        int result = JOptionPane.showConfirmDialog(frame, panel, "Custom Date Range Report", JOptionPane.OK_CANCEL_OPTION);
+        if (result == JOptionPane.OK_OPTION) {
+            int fromDay = DateTimeCodec.parseDate(fromField.getText().trim());
+            int toDay = DateTimeCodec.parseDate(toField.getText().trim());
+            if (fromDay == DateTimeCodec.INVALID || toDay == DateTimeCodec.INVALID) {
+                JOptionPane.showMessageDialog(frame, "Invalid date format. Expected format: yyyy-MM-dd", "Input Error", JOptionPane.WARNING_MESSAGE);
+                return;
             }
+            JOptionPane.showMessageDialog(frame, formatPeriodReport(fromDay, toDay));
         }
     }
 
     // Load transactions from CSV
     private static void loadTransactions2() {
-        try (BufferedReader br = Files.newBufferedReader(Paths.get(CSV_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                Transaction transaction = Transaction.fromCsv(line);
-                if (transaction != null) { // Only add valid transactions
-                    transactions.add(transaction);
-                }
-            }
+        try {
+            new LedgerCsvParser(store).load(Paths.get(CSV_FILE)); // Malformed lines are skipped by the parser
+            ledger.refreshIndexes();
         } catch (IOException e) {
             System.out.println("No existing transactions found. Starting fresh.");
         }
     }
 
-    // Save transactions to CSV
+    // Rewrite the whole ledger from memory. The new file is written next to the old one and renamed
+    // over it once it is on disk, so a crash midway leaves the previous file intact.
     private static void saveTransactions() {
-        try (BufferedWriter bw = Files.newBufferedWriter(Paths.get(CSV_FILE))) {
-            for (Transaction t : transactions) {
-                bw.write(t.toString());
-                bw.newLine();
+        closeJournal(); // Nothing may be appended to the file while it is replaced
+        try {
+            if (partitions != null) {
+                partitions.rewrite(store, ForkJoinPool.commonPool());
+            } else {
+                LedgerCsvWriter.write(store, Paths.get(CSV_FILE), ForkJoinPool.commonPool());
             }
             System.out.println("Transactions saved successfully.");
         } catch (IOException e) {
             System.out.println("Error saving transactions: " + e.getMessage());
         }
+        openJournal();
     }
 
     // View transactions for CLI
     private static void viewTransactions() {
-        if (transactions.isEmpty()) {
+        if (store.isEmpty()) {
             System.out.println("No transactions found.");
         } else {
             System.out.println("\n--- Transaction List ---");
-            for (Transaction t : transactions) {
-                System.out.println(t);
-            }
-        }
-    }
-
-    // Returns a string of transactions for GUI display
-    private static String getTransactions() {
-        if (transactions.isEmpty()) {
-            return "No transactions found.";
-        } else {
-            StringBuilder sb = new StringBuilder("--- Transactions ---\n");
-            for (Transaction t : transactions) {
-                sb.append(t).append("\n");
+            printer.begin();
+            for (int row : displayOrder()) {
+                if (!printer.row(row, LedgerPrinter.Style.PLAIN)) {
+                    break;
+                }
             }
-            return sb.toString();
+            printer.flush();
         }
     }
 
@@ -768,11 +990,13 @@ public class Main {
         System.out.print("Vendor: ");
         String vendor = scanner.nextLine();
         System.out.print("Amount: ");
-        double amount = scanner.nextDouble();
-        scanner.nextLine(); // Consume newline character
+        long amount = readAmount(scanner);
+        if (amount == Money.INVALID) {
+            return;
+        }
 
-        Transaction newTransaction = new Transaction(date, time, description, vendor, amount);
-        transactions.add(newTransaction);
+        Transaction newTransaction = Transaction.ofCents(DateTimeCodec.parseDate(date), DateTimeCodec.parseTime(time), description, vendor, amount);
+        ledger.add(newTransaction);
         System.out.println("Transaction added successfully!");
     }
 
@@ -806,47 +1030,31 @@ public class Main {
             String time = timeField.getText();
             String description = descriptionField.getText();
             String vendor = vendorField.getText();
-            double amount = Double.parseDouble(amountField.getText());
+            long amount = Money.parse(amountField.getText().trim());
+            if (amount == Money.INVALID) {
+                JOptionPane.showMessageDialog(frame, "Invalid amount. Expected a number such as 12.34", "Input Error", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
 
-            Transaction newTransaction = new Transaction(date, time, description, vendor, amount);
-            transactions.add(newTransaction);
+            Transaction newTransaction = Transaction.ofCents(DateTimeCodec.parseDate(date), DateTimeCodec.parseTime(time), description, vendor, amount);
+            ledger.add(newTransaction);
             JOptionPane.showMessageDialog(frame, "Transaction added successfully!");
         }
     }
 
     // View income and expense totals
     private static void viewTotals() {
-        double totalIncome = 0;
-        double totalExpenses = 0;
-
-        for (Transaction t : transactions) {
-            if (t.getAmount() >= 0) {
-                totalIncome += t.getAmount(); // Income
-            } else {
-                totalExpenses += t.getAmount(); // Expenses
-            }
-        }
-
-        System.out.printf("Total Income: $%.2f%n", totalIncome);
-        System.out.printf("Total Expenses: $%.2f%n", totalExpenses);
+        TotalsIndex.PeriodTotals totals = ledger.read(() -> ledger.getTotals().getTotals()); // Kept up to date on every add
+        System.out.println("Total Income: " + Money.formatDollars(totals.income));
+        System.out.println("Total Expenses: " + Money.formatDollars(totals.expenses));
     }
 
     // Get totals for GUI display
     private static String getTotals() {
-        double totalIncome = 0;
-        double totalExpenses = 0;
-
-        for (Transaction t : transactions) {
-            if (t.getAmount() >= 0) {
-                totalIncome += t.getAmount(); // Income
-            } else {
-                totalExpenses += t.getAmount(); // Expenses
-            }
-        }
-
-        String formattedIncome = String.format("$%.2f", totalIncome);
-        String formattedExpenses = String.format("-%s%.2f", "$", Math.abs(totalExpenses)); // Format expenses with - before $
+        TotalsIndex.PeriodTotals totals = ledger.read(() -> ledger.getTotals().getTotals()); // Kept up to date on every add
+        String formattedIncome = Money.formatDollars(totals.income);
+        String formattedExpenses = "-" + Money.formatDollars(Math.abs(totals.expenses)); // Format expenses with - before $
 
-        return String.format("Total Income: %s\nTotal Expenses: %s", formattedIncome, formattedExpenses);
+        return "Total Income: " + formattedIncome + "\nTotal Expenses: " + formattedExpenses;
     }
 }
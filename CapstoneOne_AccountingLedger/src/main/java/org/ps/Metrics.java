@@ -0,0 +1,215 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Where the time goes: a count, latency histogram, rows and bytes per kind of operation, kept
+// in process and dumped by the Stats menu and the headless stats command. Searches and reports
+// answered from the result cache are counted as hits only, so count, latency and rows describe
+// the work actually done.
+//
+// Every operation is also a Flight Recorder event (org.ps.LedgerOperation), so a recording started
+// with -XX:StartFlightRecording or jcmd shows them next to GC and I/O.
+//
+// Recording is lock-free (LongAdder per counter, one per log2 latency bucket) and cheap enough to
+// stay on. With -Dledger.metrics=false begin() returns null and end() returns at once; ENABLED is a
+// constant, so the JIT drops both calls.
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("ledger.metrics", "true"));
+
+    public static final Operation LOAD = new Operation("load"); // Rows and bytes read from disk
+    public static final Operation APPEND = new Operation("append"); // Rows and bytes written to the journal
+    public static final Operation SEARCH = new Operation("search"); // Rows searched
+    public static final Operation REPORT = new Operation("report"); // Candidate rows scanned
+    public static final Operation SAVE = new Operation("save"); // Rows and bytes of a full rewrite
+
+    private static final List<Operation> OPERATIONS = List.of(LOAD, APPEND, SEARCH, REPORT, SAVE);
+    private static final int BUCKETS = 64; // Bucket i holds latencies of 2^i to 2^(i+1) - 1 ns
+
+    // Flight Recorder event of one operation; the JFR duration is the operation's latency
+    @Name("org.ps.LedgerOperation")
+    @Label("Ledger Operation")
+    @Category("Ledger")
+    @Description("Load, append, search, report or save on the ledger")
+    public static final class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        transient long startNanos; // Not recorded
+    }
+
+    // Counters of one kind of operation
+    public static final class Operation {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder hits = new LongAdder(); // Answered from the result cache, not timed
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+        Operation(String name) {
+            this.name = name;
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        // Start timing an operation; pass the result to end(). Null when metrics are off.
+        public OperationEvent begin() {
+            if (!ENABLED) {
+                return null;
+            }
+            OperationEvent event = new OperationEvent();
+            event.begin();
+            event.startNanos = System.nanoTime();
+            return event;
+        }
+
+        // Record an operation started with begin()
+        public void end(OperationEvent event, long rowCount, long byteCount) {
+            if (event == null) {
+                return;
+            }
+            long elapsed = System.nanoTime() - event.startNanos;
+            count.increment();
+            nanos.add(elapsed);
+            rows.add(rowCount);
+            bytes.add(byteCount);
+            maxNanos.accumulate(elapsed);
+            histogram[63 - Long.numberOfLeadingZeros(Math.max(1, elapsed))].increment();
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = name;
+                event.rows = rowCount;
+                event.bytes = byteCount;
+                event.commit();
+            }
+        }
+
+        // Count an operation answered from the result cache
+        public void hit() {
+            if (ENABLED) {
+                hits.increment();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getNanos() {
+            return nanos.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        // Latency below which the given fraction of operations fell, to within a factor of two
+        public long percentileNanos(double fraction) {
+            long total = 0;
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram[i].sum();
+                total += counts[i];
+            }
+            long wanted = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= wanted && seen > 0) {
+                    return Math.min((2L << i) - 1, getMaxNanos()); // Top of the bucket
+                }
+            }
+            return 0;
+        }
+
+        void reset() {
+            count.reset();
+            hits.reset();
+            nanos.reset();
+            rows.reset();
+            bytes.reset();
+            maxNanos.reset();
+            for (LongAdder bucket : histogram) {
+                bucket.reset();
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static List<Operation> operations() {
+        return OPERATIONS;
+    }
+
+    // Every operation as a table, header first; times in microseconds
+    public static List<String[]> table() {
+        List<String[]> table = new ArrayList<>();
+        table.add(new String[]{"operation", "count", "hits", "total ms", "mean us", "p50 us", "p99 us", "max us", "rows", "bytes"});
+        for (Operation operation : OPERATIONS) {
+            long count = operation.getCount();
+            table.add(new String[]{operation.getName(), Long.toString(count), Long.toString(operation.getHits()),
+                    Long.toString(operation.getNanos() / 1_000_000),
+                    Long.toString(count == 0 ? 0 : operation.getNanos() / count / 1_000),
+                    Long.toString(operation.percentileNanos(0.5) / 1_000),
+                    Long.toString(operation.percentileNanos(0.99) / 1_000),
+                    Long.toString(operation.getMaxNanos() / 1_000),
+                    Long.toString(operation.getRows()), Long.toString(operation.getBytes())});
+        }
+        return table;
+    }
+
+    // Counters of the result cache as a table, header first
+    public static List<String[]> cacheTable(ResultCache cache) {
+        List<String[]> table = new ArrayList<>();
+        table.add(new String[]{"cache", "hits", "misses", "evictions", "invalidations", "entries", "bytes"});
+        table.add(new String[]{"results", Long.toString(cache.getHits()), Long.toString(cache.getMisses()),
+                Long.toString(cache.getEvictions()), Long.toString(cache.getInvalidations()),
+                Integer.toString(cache.size()), Long.toString(cache.getBytes())});
+        return table;
+    }
+
+    // Start counting from zero again
+    public static void reset() {
+        for (Operation operation : OPERATIONS) {
+            operation.reset();
+        }
+    }
+}
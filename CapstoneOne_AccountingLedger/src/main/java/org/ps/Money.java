@@ -0,0 +1,189 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Fixed-point money: every amount in the ledger is a long number of cents.
+// Parsing reads digits straight from the text (no Double.parseDouble, no intermediate String),
+// formatting writes digits straight into a char array (no String.format), and sums are exact:
+// amounts are added as plain longs in blocks that cannot overflow, and checked once per block.
+public final class Money {
+    public static final long INVALID = Long.MIN_VALUE; // Returned when an amount does not parse
+
+    private static final int SUM_BLOCK = 1024; // Values summed without a check between them
+    private static final long SAFE_MAGNITUDE = 1L << 52; // 1024 values below 2^52 cannot overflow a long
+
+    private Money() {
+    }
+
+    // Parse an amount such as 900.0, -100.5, $12.34 or -$5 into cents, rounding half up on the
+    // third decimal. Returns INVALID if the text is not an amount.
+    public static long parse(CharSequence text) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = text.charAt(i);
+            if (c > 127) {
+                return INVALID;
+            }
+            bytes[i] = (byte) c;
+        }
+        return parse(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    // Parse an amount from ASCII bytes in buffer[start, end)
+    public static long parse(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && buffer.get(i) == '$') {
+            i++;
+        }
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        if (i < end && buffer.get(i) == '$') {
+            i++;
+        }
+
+        long whole = 0;
+        int wholeDigits = 0;
+        for (; i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9'; i++, wholeDigits++) {
+            if (whole > (Long.MAX_VALUE / 100 - 9) / 10) {
+                return INVALID; // Too large to hold in cents
+            }
+            whole = whole * 10 + (buffer.get(i) - '0');
+        }
+
+        long fraction = 0; // Hundredths
+        int fractionDigits = 0;
+        if (i < end && buffer.get(i) == '.') {
+            i++;
+            for (; i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9'; i++, fractionDigits++) {
+                int digit = buffer.get(i) - '0';
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + digit;
+                } else if (fractionDigits == 2 && digit >= 5) {
+                    fraction++; // Round half up on the third decimal
+                }
+            }
+        }
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+
+        if (i < end && (buffer.get(i) == 'E' || buffer.get(i) == 'e')) {
+            return parseExponent(buffer, start, end); // E.g. 1.0E7 from String.valueOf(double)
+        }
+        if (i != end || wholeDigits + fractionDigits == 0) {
+            return INVALID;
+        }
+        long cents = whole * 100 + fraction;
+        return negative ? -cents : cents;
+    }
+
+    // Fallback for the rare exponent form: build a String and let Double.parseDouble handle it
+    private static long parseExponent(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes, 0, bytes.length);
+        try {
+            double amount = Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII).replace("$", ""));
+            if (!(Math.abs(amount) < Long.MAX_VALUE / 100)) {
+                return INVALID; // Too large to hold in cents, or not a number at all
+            }
+            return ofDouble(amount);
+        } catch (NumberFormatException e) {
+            return INVALID;
+        }
+    }
+
+    // Cents closest to a double amount
+    public static long ofDouble(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    // The amount as a double, for display code that still wants one
+    public static double toDouble(long cents) {
+        return cents / 100.0;
+    }
+
+    // The amount with two decimals, the same text as String.format("%.2f", cents / 100.0)
+    public static String format(long cents) {
+        char[] chars = new char[22];
+        return new String(chars, 0, write(chars, 0, cents));
+    }
+
+    // The amount with a dollar sign in front, the same text as String.format("$%.2f", cents / 100.0)
+    public static String formatDollars(long cents) {
+        char[] chars = new char[23];
+        chars[0] = '$';
+        return new String(chars, 0, write(chars, 1, cents));
+    }
+
+    // Write the amount with two decimals into chars at position and return the position after it
+    public static int write(char[] chars, int position, long cents) {
+        if (cents < 0) {
+            chars[position++] = '-';
+        }
+        long units = Math.abs(cents / 100); // Divide first so Long.MIN_VALUE does not overflow
+        int hundredths = (int) Math.abs(cents % 100);
+        int digits = 1;
+        for (long rest = units / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            chars[i] = (char) ('0' + units % 10);
+            units /= 10;
+        }
+        position += digits;
+        chars[position] = '.';
+        chars[position + 1] = (char) ('0' + hundredths / 10);
+        chars[position + 2] = (char) ('0' + hundredths % 10);
+        return position + 3;
+    }
+
+    // Exact sum of values[from, to). Throws ArithmeticException if it does not fit in a long.
+    public static long sum(long[] values, int from, int to) {
+        return sum(values, from, to, -1L, -1L);
+    }
+
+    // Exact sum of the positive values in values[from, to)
+    public static long sumIncome(long[] values, int from, int to) {
+        return sum(values, from, to, -1L, 0L);
+    }
+
+    // Exact sum of the negative values in values[from, to) (zero or negative)
+    public static long sumExpenses(long[] values, int from, int to) {
+        return sum(values, from, to, 0L, -1L);
+    }
+
+    // Sum in blocks. Each value is masked by keepPositive or keepNegative (-1 keeps, 0 drops) without
+    // a branch, so the inner loop is plain long arithmetic the JIT can vectorize. A block whose values
+    // are all below 2^52 cannot overflow; only a block with huge values is re-added with checks.
+    private static long sum(long[] values, int from, int to, long keepPositive, long keepNegative) {
+        long total = 0;
+        for (int start = from; start < to; start += SUM_BLOCK) {
+            int end = Math.min(start + SUM_BLOCK, to);
+            long block = 0;
+            long magnitude = 0;
+            for (int i = start; i < end; i++) {
+                long value = values[i];
+                long sign = value >> 63; // -1 for negative values, 0 otherwise
+                long kept = value & ((sign & keepNegative) | (~sign & keepPositive));
+                block += kept;
+                magnitude |= kept ^ (kept >> 63); // Roughly |kept|, enough to bound the block
+            }
+            if (magnitude >= SAFE_MAGNITUDE) {
+                block = 0;
+                for (int i = start; i < end; i++) {
+                    long value = values[i];
+                    long sign = value >> 63;
+                    block = Math.addExact(block, value & ((sign & keepNegative) | (~sign & keepPositive)));
+                }
+            }
+            total = Math.addExact(total, block);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,83 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.util.Arrays;
+
+// Stable LSD radix sort of row numbers by primitive long keys.
+// Works 16 bits at a time and skips passes where every key has the same digit, so small keys
+// (times, ranks, packed dates) only take a few linear passes instead of an O(n log n) comparison sort.
+public final class RadixSort {
+    private static final int DIGIT_BITS = 16;
+    private static final int BUCKETS = 1 << DIGIT_BITS;
+    private static final int INSERTION_SORT_THRESHOLD = 64; // Small batches (e.g. a few new rows) skip the buckets
+
+    private RadixSort() {
+    }
+
+    // Sort rows (and keys alongside them) by ascending key; equal keys keep their order
+    public static void sort(int[] rows, long[] keys, int length) {
+        if (length < INSERTION_SORT_THRESHOLD) {
+            insertionSort(rows, keys, length);
+            return;
+        }
+        int[] rowBuffer = new int[length];
+        long[] keyBuffer = new long[length];
+        int[] counts = new int[BUCKETS];
+        int[] sourceRows = rows;
+        long[] sourceKeys = keys;
+        int[] targetRows = rowBuffer;
+        long[] targetKeys = keyBuffer;
+
+        for (int shift = 0; shift < 64; shift += DIGIT_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < length; i++) {
+                counts[digit(sourceKeys[i], shift)]++;
+            }
+            if (counts[digit(sourceKeys[0], shift)] == length) {
+                continue; // Every key has the same digit here, nothing to do
+            }
+            int position = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                int count = counts[bucket];
+                counts[bucket] = position;
+                position += count;
+            }
+            for (int i = 0; i < length; i++) {
+                int target = counts[digit(sourceKeys[i], shift)]++;
+                targetRows[target] = sourceRows[i];
+                targetKeys[target] = sourceKeys[i];
+            }
+            int[] swapRows = sourceRows;
+            sourceRows = targetRows;
+            targetRows = swapRows;
+            long[] swapKeys = sourceKeys;
+            sourceKeys = targetKeys;
+            targetKeys = swapKeys;
+        }
+        if (sourceRows != rows) {
+            System.arraycopy(sourceRows, 0, rows, 0, length);
+            System.arraycopy(sourceKeys, 0, keys, 0, length);
+        }
+    }
+
+    private static void insertionSort(int[] rows, long[] keys, int length) {
+        for (int i = 1; i < length; i++) {
+            int row = rows[i];
+            long key = keys[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j] > key) {
+                rows[j + 1] = rows[j];
+                keys[j + 1] = keys[j];
+                j--;
+            }
+            rows[j + 1] = row;
+            keys[j + 1] = key;
+        }
+    }
+
+    // The 16-bit digit at shift, with the sign bit flipped so negative keys sort first
+    private static int digit(long key, int shift) {
+        return (int) (((key ^ Long.MIN_VALUE) >>> shift) & (BUCKETS - 1));
+    }
+}
@@ -0,0 +1,274 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Runs a ReportQuery over the ledger as a parallel fork-join reduction.
+//
+// The candidate rows are narrowed first with the indexes (the date index for a date range, the
+// vendor postings for a vendor filter), otherwise every row of the store is a candidate. The
+// candidates are split into chunks; each chunk fills its own group -> Aggregate map with no
+// sharing, and the maps are merged pairwise as the tasks join.
+public class ReportEngine {
+    private static final int CHUNK_ROWS = 1 << 15; // Rows per leaf task
+
+    // Count, sum, min, max, income and expenses of a set of rows, in cents
+    public static final class Aggregate {
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+        private long income;
+        private long expenses; // Zero or negative
+
+        void add(long cents) {
+            count++;
+            sum = Math.addExact(sum, cents);
+            min = Math.min(min, cents);
+            max = Math.max(max, cents);
+            if (cents > 0) {
+                income = Math.addExact(income, cents);
+            } else {
+                expenses = Math.addExact(expenses, cents);
+            }
+        }
+
+        void merge(Aggregate other) {
+            count += other.count;
+            sum = Math.addExact(sum, other.sum);
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            income = Math.addExact(income, other.income);
+            expenses = Math.addExact(expenses, other.expenses);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        // Smallest amount, or 0 for an empty aggregate
+        public long getMin() {
+            return count == 0 ? 0 : min;
+        }
+
+        // Largest amount, or 0 for an empty aggregate
+        public long getMax() {
+            return count == 0 ? 0 : max;
+        }
+
+        // Average amount rounded to the nearest cent, or 0 for an empty aggregate
+        public long getAverage() {
+            return count == 0 ? 0 : Math.round((double) sum / count);
+        }
+
+        public long getIncome() {
+            return income;
+        }
+
+        public long getExpenses() {
+            return expenses;
+        }
+    }
+
+    // One group of the result
+    public static final class Group {
+        public final int key; // Epoch day, Monday, yyyymm, yyyy or vendor id, depending on the group-by
+        public final String label;
+        public final Aggregate aggregate;
+
+        Group(int key, String label, Aggregate aggregate) {
+            this.key = key;
+            this.label = label;
+            this.aggregate = aggregate;
+        }
+    }
+
+    // The groups in key order (vendors by name) plus the aggregate over every matching row
+    public static final class Result {
+        public final List<Group> groups;
+        public final Aggregate total;
+
+        Result(List<Group> groups, Aggregate total) {
+            this.groups = groups;
+            this.total = total;
+        }
+    }
+
+    private final Ledger ledger;
+    private final ForkJoinPool pool;
+
+    public ReportEngine(Ledger ledger, ForkJoinPool pool) {
+        this.ledger = ledger;
+        this.pool = pool;
+    }
+
+    public ReportEngine(Ledger ledger) {
+        this(ledger, ForkJoinPool.commonPool());
+    }
+
+    // Run the query, or return its cached result if no row added since could change it
+    public Result run(ReportQuery query) {
+        ReportQuery key = new ReportQuery(query);
+        return ledger.getCache().get(key, Metrics.REPORT, () -> compute(key));
+    }
+
+    private Result compute(ReportQuery query) {
+        Metrics.OperationEvent event = Metrics.REPORT.begin();
+        LedgerStore store = ledger.getStore();
+        int size = store.size(); // Rows added while the report runs are not part of it
+
+        // Candidate rows: narrowed by an index where the filter allows it, null for every row
+        int[] rows = null;
+        boolean[] vendorAllowed = null;
+        if (query.getVendor() != null) {
+            int[] vendorIds = ledger.readLocked(() -> ledger.getVendors().findVendors(query.getVendor()));
+            vendorAllowed = new boolean[store.getVendors().size()];
+            for (int id : vendorIds) {
+                vendorAllowed[id] = true;
+            }
+            if (!query.hasDateRange()) {
+                rows = ledger.readLocked(() -> ledger.getVendors().rowsOf(vendorIds));
+            }
+        }
+        if (query.hasDateRange()) {
+            rows = ledger.readLocked(() -> ledger.getDates().rowsBetween(query.getFromDay(), query.getToDay()));
+        }
+
+        ReduceTask task = new ReduceTask(store, query, rows, vendorAllowed, size, 0, rows == null ? size : rows.length);
+        Map<Integer, Aggregate> groups = pool.invoke(task);
+        Result result = toResult(store, query.getGroupBy(), groups);
+        Metrics.REPORT.end(event, rows == null ? size : rows.length, 0); // Candidates scanned, not rows matched
+        return result;
+    }
+
+    private static Result toResult(LedgerStore store, ReportQuery.GroupBy groupBy, Map<Integer, Aggregate> groupMap) {
+        List<Group> groups = new ArrayList<>(groupMap.size());
+        Aggregate total = new Aggregate();
+        for (Map.Entry<Integer, Aggregate> entry : groupMap.entrySet()) {
+            int key = entry.getKey();
+            groups.add(new Group(key, label(store, groupBy, key), entry.getValue()));
+            total.merge(entry.getValue());
+        }
+        if (groupBy == ReportQuery.GroupBy.VENDOR) {
+            groups.sort((a, b) -> a.label.compareTo(b.label));
+        } else {
+            groups.sort((a, b) -> Integer.compare(a.key, b.key));
+        }
+        return new Result(groups, total);
+    }
+
+    // Group key of a row
+    private static int groupKey(LedgerStore store, ReportQuery.GroupBy groupBy, int row) {
+        switch (groupBy) {
+            case DAY:
+                return store.getEpochDay(row);
+            case WEEK:
+                int day = store.getEpochDay(row);
+                return day - Math.floorMod(day + 3, 7); // Monday; 1970-01-01 was a Thursday
+            case MONTH:
+                return DateTimeCodec.toYearMonthDay(store.getEpochDay(row)) / 100;
+            case YEAR:
+                return DateTimeCodec.year(store.getEpochDay(row));
+            case VENDOR:
+                return store.getVendorId(row);
+            default:
+                return 0;
+        }
+    }
+
+    private static String label(LedgerStore store, ReportQuery.GroupBy groupBy, int key) {
+        switch (groupBy) {
+            case DAY:
+                return DateTimeCodec.formatDate(key);
+            case WEEK:
+                return "Week of " + DateTimeCodec.formatDate(key);
+            case MONTH:
+                return String.format("%04d-%02d", key / 100, key % 100);
+            case YEAR:
+                return String.valueOf(key);
+            case VENDOR:
+                return store.getVendors().get(key);
+            default:
+                return "All";
+        }
+    }
+
+    // Reduce candidates [from, to) to per-group aggregates, splitting in two until the range is small
+    private static final class ReduceTask extends RecursiveTask<Map<Integer, Aggregate>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient LedgerStore store;
+        private final transient ReportQuery query;
+        private final int[] rows; // Candidate rows, null for rows 0 to size - 1
+        private final boolean[] vendorAllowed; // Null when there is no vendor filter
+        private final int size;
+        private final int from;
+        private final int to;
+
+        ReduceTask(LedgerStore store, ReportQuery query, int[] rows, boolean[] vendorAllowed, int size, int from, int to) {
+            this.store = store;
+            this.query = query;
+            this.rows = rows;
+            this.vendorAllowed = vendorAllowed;
+            this.size = size;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<Integer, Aggregate> compute() {
+            if (to - from <= CHUNK_ROWS) {
+                return reduceChunk();
+            }
+            int middle = (from + to) >>> 1;
+            ReduceTask left = new ReduceTask(store, query, rows, vendorAllowed, size, from, middle);
+            ReduceTask right = new ReduceTask(store, query, rows, vendorAllowed, size, middle, to);
+            left.fork();
+            Map<Integer, Aggregate> merged = right.compute();
+            for (Map.Entry<Integer, Aggregate> entry : left.join().entrySet()) {
+                Aggregate existing = merged.putIfAbsent(entry.getKey(), entry.getValue());
+                if (existing != null) {
+                    existing.merge(entry.getValue());
+                }
+            }
+            return merged;
+        }
+
+        private Map<Integer, Aggregate> reduceChunk() {
+            Map<Integer, Aggregate> groups = new HashMap<>();
+            ReportQuery.GroupBy groupBy = query.getGroupBy();
+            Aggregate last = null; // Rows mostly come in runs of the same group
+            int lastKey = 0;
+            for (int i = from; i < to; i++) {
+                int row = rows == null ? i : rows[i];
+                if (row >= size) {
+                    continue; // Added after the report started
+                }
+                long cents = store.getAmountCents(row);
+                if (!query.acceptsAmount(cents)) {
+                    continue;
+                }
+                if (vendorAllowed != null && !vendorAllowed[store.getVendorId(row)]) {
+                    continue;
+                }
+                int key = groupKey(store, groupBy, row);
+                if (last == null || key != lastKey) {
+                    last = groups.computeIfAbsent(key, k -> new Aggregate());
+                    lastKey = key;
+                }
+                last.add(cents);
+            }
+            return groups;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.util.Objects;
+
+// What a report covers and how it is grouped: a filter on date range, vendor, sign and amount
+// band, plus a group-by. Unset filters let every row through. The menu reports are presets.
+// A query is also the result cache key of its report.
+public class ReportQuery implements ResultCache.Key {
+
+    // How rows are grouped in the result
+    public enum GroupBy {
+        NONE, DAY, WEEK, MONTH, YEAR, VENDOR
+    }
+
+    // Which amounts are included
+    public enum Sign {
+        ALL, INCOME, EXPENSES
+    }
+
+    private int fromDay = Integer.MIN_VALUE;
+    private int toDay = Integer.MAX_VALUE;
+    private String vendor; // Case-insensitive part of the vendor name, null for any vendor
+    private Sign sign = Sign.ALL;
+    private long minCents = Long.MIN_VALUE;
+    private long maxCents = Long.MAX_VALUE;
+    private GroupBy groupBy = GroupBy.NONE;
+
+    public ReportQuery() {
+    }
+
+    // Copy of another query, e.g. to keep as a cache key while the original may still change
+    public ReportQuery(ReportQuery other) {
+        fromDay = other.fromDay;
+        toDay = other.toDay;
+        vendor = other.vendor;
+        sign = other.sign;
+        minCents = other.minCents;
+        maxCents = other.maxCents;
+        groupBy = other.groupBy;
+    }
+
+    // Only rows dated fromDay to toDay (inclusive)
+    public ReportQuery between(int fromDay, int toDay) {
+        this.fromDay = fromDay;
+        this.toDay = toDay;
+        return this;
+    }
+
+    // Only rows whose vendor name contains the text, ignoring case
+    public ReportQuery vendor(String vendor) {
+        this.vendor = vendor;
+        return this;
+    }
+
+    // Only income or only expenses
+    public ReportQuery sign(Sign sign) {
+        this.sign = sign;
+        return this;
+    }
+
+    // Only amounts from minCents to maxCents (inclusive)
+    public ReportQuery amountBetween(long minCents, long maxCents) {
+        this.minCents = minCents;
+        this.maxCents = maxCents;
+        return this;
+    }
+
+    public ReportQuery groupBy(GroupBy groupBy) {
+        this.groupBy = groupBy;
+        return this;
+    }
+
+    // Presets for the reports menu, relative to the given day
+
+    // From the first day of the month to its last day
+    public static ReportQuery monthToDate(int today) {
+        int first = today - DateTimeCodec.dayOfMonth(today) + 1;
+        return new ReportQuery().between(first, first + DateTimeCodec.lengthOfMonth(DateTimeCodec.year(today), DateTimeCodec.month(today)) - 1);
+    }
+
+    // The whole calendar month before the one of today
+    public static ReportQuery previousMonth(int today) {
+        int lastOfPrevious = today - DateTimeCodec.dayOfMonth(today);
+        return new ReportQuery().between(lastOfPrevious - DateTimeCodec.dayOfMonth(lastOfPrevious) + 1, lastOfPrevious);
+    }
+
+    // The whole calendar year of today
+    public static ReportQuery yearToDate(int today) {
+        int year = DateTimeCodec.year(today);
+        return new ReportQuery().between(DateTimeCodec.toEpochDay(year, 1, 1), DateTimeCodec.toEpochDay(year, 12, 31));
+    }
+
+    // The whole calendar year before the one of today
+    public static ReportQuery previousYear(int today) {
+        int year = DateTimeCodec.year(today) - 1;
+        return new ReportQuery().between(DateTimeCodec.toEpochDay(year, 1, 1), DateTimeCodec.toEpochDay(year, 12, 31));
+    }
+
+    public int getFromDay() {
+        return fromDay;
+    }
+
+    public int getToDay() {
+        return toDay;
+    }
+
+    // True if the query is limited to a date range
+    public boolean hasDateRange() {
+        return fromDay != Integer.MIN_VALUE || toDay != Integer.MAX_VALUE;
+    }
+
+    public String getVendor() {
+        return vendor;
+    }
+
+    public Sign getSign() {
+        return sign;
+    }
+
+    public long getMinCents() {
+        return minCents;
+    }
+
+    public long getMaxCents() {
+        return maxCents;
+    }
+
+    public GroupBy getGroupBy() {
+        return groupBy;
+    }
+
+    // True if a row with this amount passes the sign and amount filters
+    public boolean acceptsAmount(long cents) {
+        if (sign == Sign.INCOME && cents <= 0 || sign == Sign.EXPENSES && cents >= 0) {
+            return false;
+        }
+        return cents >= minCents && cents <= maxCents;
+    }
+
+    // True if the row passes every filter of the query
+    public boolean accepts(LedgerStore store, int row) {
+        int day = store.getEpochDay(row);
+        return day >= fromDay && day <= toDay && acceptsAmount(store.getAmountCents(row))
+                && (vendor == null || store.getVendor(row).toLowerCase().contains(vendor.toLowerCase()));
+    }
+
+    // A new row only changes the report if it passes the filters
+    @Override
+    public boolean affectedBy(LedgerStore store, int row) {
+        return accepts(store, row);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ReportQuery)) {
+            return false;
+        }
+        ReportQuery query = (ReportQuery) other;
+        return fromDay == query.fromDay && toDay == query.toDay && Objects.equals(vendor, query.vendor) && sign == query.sign
+                && minCents == query.minCents && maxCents == query.maxCents && groupBy == query.groupBy;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fromDay, toDay, vendor, sign, minCents, maxCents, groupBy);
+    }
+}
@@ -0,0 +1,226 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Bounded cache of report and search results, so running the same report or search again while
+// the ledger barely changes costs a lookup.
+//
+// Entries are evicted least recently used first once their estimated size passes the byte budget.
+// When rows are added, only the entries those rows could change are dropped: every key knows
+// which rows it covers (a date range, a search term, a report filter). A big batch of rows drops
+// everything instead of checking each row against each entry.
+//
+// Cached values are shared between callers and must not be modified.
+public class ResultCache {
+    private static final int CHECK_ROWS_LIMIT = 4096; // Larger batches clear the whole cache
+
+    // What a cached result was computed from. Keys must be immutable and implement equals and hashCode.
+    public interface Key {
+        // True if adding the given row could change the cached result
+        boolean affectedBy(LedgerStore store, int row);
+    }
+
+    // Rows dated fromDay to toDay (inclusive), as returned by DateIndex.rowsBetween
+    public static final class DateRangeKey implements Key {
+        private final int fromDay;
+        private final int toDay;
+
+        public DateRangeKey(int fromDay, int toDay) {
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+        }
+
+        @Override
+        public boolean affectedBy(LedgerStore store, int row) {
+            int day = store.getEpochDay(row);
+            return day >= fromDay && day <= toDay;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof DateRangeKey && ((DateRangeKey) other).fromDay == fromDay && ((DateRangeKey) other).toDay == toDay;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fromDay + toDay;
+        }
+    }
+
+    // Rows matching a search term, as returned by SearchIndex.search
+    public static final class SearchKey implements Key {
+        private final String searchTerm;
+        private final boolean caseSensitive;
+
+        public SearchKey(String searchTerm, boolean caseSensitive) {
+            this.searchTerm = searchTerm;
+            this.caseSensitive = caseSensitive;
+        }
+
+        @Override
+        public boolean affectedBy(LedgerStore store, int row) {
+            return store.matchesSearchTerm(row, searchTerm, caseSensitive);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof SearchKey && ((SearchKey) other).caseSensitive == caseSensitive
+                    && ((SearchKey) other).searchTerm.equals(searchTerm);
+        }
+
+        @Override
+        public int hashCode() {
+            return searchTerm.hashCode() * 2 + (caseSensitive ? 1 : 0);
+        }
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long bytes;
+
+        Entry(Object value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // Access order: eldest is least recently used
+    private long bytes; // Estimated size of every cached value
+    private long version; // Bumped on every invalidation, so results computed before it are not stored
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public ResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // The cached result for the key, or compute, cache and return it.
+    // The computation runs outside the cache's lock; if rows were added meanwhile the result is
+    // returned but not cached, since it may already be out of date.
+    public <T> T get(Key key, Supplier<T> compute) {
+        return get(key, null, compute);
+    }
+
+    // Same as get(key, compute), also counting a hit against the operation's metrics
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key key, Metrics.Operation operation, Supplier<T> compute) {
+        long startVersion;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                if (operation != null) {
+                    operation.hit();
+                }
+                return (T) entry.value;
+            }
+            misses++;
+            startVersion = version;
+        }
+        T value = compute.get();
+        long size = estimateBytes(value);
+        synchronized (this) {
+            if (version == startVersion && size <= maxBytes / 4) { // One result may not push out everything else
+                Entry previous = entries.put(key, new Entry(value, size));
+                if (previous != null) {
+                    bytes -= previous.bytes;
+                }
+                bytes += size;
+                evict();
+            }
+        }
+        return value;
+    }
+
+    // Drop least recently used entries until the cache fits its budget
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    // Drop the entries that rows fromRow to toRow - 1 of the store could change
+    public synchronized void invalidate(LedgerStore store, int fromRow, int toRow) {
+        if (fromRow >= toRow) {
+            return;
+        }
+        version++;
+        if (toRow - fromRow > CHECK_ROWS_LIMIT) {
+            invalidations += entries.size();
+            clearEntries();
+            return;
+        }
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            for (int row = fromRow; row < toRow; row++) {
+                if (entry.getKey().affectedBy(store, row)) {
+                    bytes -= entry.getValue().bytes;
+                    it.remove();
+                    invalidations++;
+                    break;
+                }
+            }
+        }
+    }
+
+    // Drop every entry, e.g. when the ledger is reloaded
+    public synchronized void clear() {
+        version++;
+        clearEntries();
+    }
+
+    private void clearEntries() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    // Rough heap size of a cached value
+    private static long estimateBytes(Object value) {
+        if (value instanceof int[]) {
+            return 16 + 4L * ((int[]) value).length;
+        }
+        if (value instanceof ReportEngine.Result) {
+            return 64 + 128L * ((ReportEngine.Result) value).groups.size();
+        }
+        return 64;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // Entries dropped to stay within the byte budget
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    // Entries dropped because added rows changed their result
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Estimated bytes held by the cached values
+    public synchronized long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,37 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+// Plain Java aggregation loops, used when the Vector API is not available.
+// The loops are branch-free where possible so the JIT can still auto-vectorize them.
+public class ScalarKernels implements AggregationKernels {
+
+    @Override
+    public long sumIncome(long[] values, int from, int to) {
+        return Money.sumIncome(values, from, to);
+    }
+
+    @Override
+    public long sumExpenses(long[] values, int from, int to) {
+        return Money.sumExpenses(values, from, to);
+    }
+
+    @Override
+    public void sumInRange(int[] epochDays, long[] amounts, int from, int to, int fromDay, int toDay, long[] totals) {
+        long income = 0;
+        long expenses = 0;
+        for (int i = from; i < to; i++) {
+            int day = epochDays[i];
+            if (day >= fromDay && day <= toDay) {
+                long amount = amounts[i];
+                if (amount > 0) {
+                    income = Math.addExact(income, amount);
+                } else {
+                    expenses = Math.addExact(expenses, amount);
+                }
+            }
+        }
+        totals[0] = Math.addExact(totals[0], income);
+        totals[1] = Math.addExact(totals[1], expenses);
+    }
+}
@@ -0,0 +1,214 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+// Search index with the same matching rules as Transaction.matchesSearchTerm: a row matches when
+// the search term is a substring of its date, time, description, vendor or amount text.
+//
+// Each of those fields is indexed separately. A field only keeps each distinct value once, with
+//   - a trigram index over the lower-cased text of the distinct values, for substring lookups
+//   - a posting list per value linking the rows that hold it
+// A search finds the matching distinct values first (through the trigrams, or a scan of the
+// distinct values for terms shorter than three characters) and then expands only their postings.
+// Amounts get their own numeric sub-index from cents to value id. Everything updates on add.
+public class SearchIndex {
+    private int indexedRows; // Rows of the store already indexed
+
+    private final FieldIndex dates = new FieldIndex();
+    private final FieldIndex times = new FieldIndex();
+    private final FieldIndex descriptions = new FieldIndex();
+    private final FieldIndex vendors = new FieldIndex();
+    private final FieldIndex amounts = new FieldIndex();
+
+    private final Map<Integer, Integer> dateIds = new HashMap<>(); // Epoch day -> value id
+    private int[] timeIds = new int[0]; // Second of day -> value id + 1
+    private final Map<Long, Integer> amountIds = new HashMap<>(); // Amount in cents -> value id
+
+    // Index every row of the store that has not been indexed yet
+    public void update(LedgerStore store) {
+        int size = store.size();
+        if (timeIds.length == 0) {
+            timeIds = new int[86400];
+        }
+        // New distinct descriptions and vendors come straight from the store's dictionaries
+        descriptions.addValues(store.getDescriptions());
+        vendors.addValues(store.getVendors());
+
+        for (int row = indexedRows; row < size; row++) {
+            int day = store.getEpochDay(row);
+            Integer dateId = dateIds.get(day);
+            if (dateId == null) {
+                dateId = dates.addValue(DateTimeCodec.formatDate(day));
+                dateIds.put(day, dateId);
+            }
+            dates.addRow(row, dateId);
+
+            int second = store.getSecondOfDay(row);
+            if (timeIds[second] == 0) {
+                timeIds[second] = times.addValue(DateTimeCodec.formatTime(second)) + 1;
+            }
+            times.addRow(row, timeIds[second] - 1);
+
+            long cents = store.getAmountCents(row);
+            Integer amountId = amountIds.get(cents);
+            if (amountId == null) {
+                amountId = amounts.addValue(String.valueOf(cents / 100.0)); // Same text as String.valueOf(amount)
+                amountIds.put(cents, amountId);
+            }
+            amounts.addRow(row, amountId);
+
+            descriptions.addRow(row, store.getDescriptionId(row));
+            vendors.addRow(row, store.getVendorId(row));
+        }
+        indexedRows = size;
+    }
+
+    // Rows whose date, time, description, vendor or amount contains the search term, in row order
+    public int[] search(String searchTerm, boolean caseSensitive) {
+        BitSet matches = new BitSet(indexedRows);
+        dates.match(searchTerm, caseSensitive, matches);
+        times.match(searchTerm, caseSensitive, matches);
+        descriptions.match(searchTerm, caseSensitive, matches);
+        vendors.match(searchTerm, caseSensitive, matches);
+        amounts.match(searchTerm, caseSensitive, matches);
+        return matches.stream().toArray();
+    }
+
+    // Rows whose amount is exactly the given number of cents, through the numeric sub-index
+    public int[] searchAmount(long amountCents) {
+        Integer amountId = amountIds.get(amountCents);
+        BitSet matches = new BitSet(indexedRows);
+        if (amountId != null) {
+            amounts.addPostings(amountId, matches);
+        }
+        return matches.stream().toArray();
+    }
+
+    // Forget every row, e.g. before the ledger is reloaded
+    public void clear() {
+        indexedRows = 0;
+        dates.clear();
+        times.clear();
+        descriptions.clear();
+        vendors.clear();
+        amounts.clear();
+        dateIds.clear();
+        timeIds = new int[0];
+        amountIds.clear();
+    }
+
+    // Distinct values of one field with their trigrams and the posting list of each value
+    private static final class FieldIndex {
+        private String[] texts = new String[16]; // Value id -> original text
+        private String[] lowerTexts = new String[16]; // Value id -> lower-cased text
+        private int valueCount;
+        private final Map<Long, IntList> trigrams = new HashMap<>(); // Lower-cased trigram -> value ids
+
+        // Posting lists as linked lists threaded through the rows: head/tail per value, next per row
+        private int[] heads = new int[16];
+        private int[] tails = new int[16];
+        private int[] next = new int[16];
+
+        // Add every dictionary entry that is not a value yet
+        void addValues(StringDictionary dictionary) {
+            while (valueCount < dictionary.size()) {
+                addValue(dictionary.get(valueCount));
+            }
+        }
+
+        // Add a new distinct value and return its id
+        int addValue(String text) {
+            int id = valueCount++;
+            if (id == texts.length) {
+                texts = Arrays.copyOf(texts, id * 2);
+                lowerTexts = Arrays.copyOf(lowerTexts, id * 2);
+                heads = Arrays.copyOf(heads, id * 2);
+                tails = Arrays.copyOf(tails, id * 2);
+            }
+            String lower = text.toLowerCase();
+            texts[id] = text;
+            lowerTexts[id] = lower;
+            heads[id] = -1;
+            tails[id] = -1;
+            for (int i = 0; i + 3 <= lower.length(); i++) {
+                IntList ids = trigrams.computeIfAbsent(trigram(lower, i), key -> new IntList(2));
+                if (ids.isEmpty() || ids.get(ids.size() - 1) != id) { // A value repeating a trigram is listed once
+                    ids.add(id);
+                }
+            }
+            return id;
+        }
+
+        // Link a row onto the posting list of its value
+        void addRow(int row, int valueId) {
+            if (row >= next.length) {
+                next = Arrays.copyOf(next, Math.max(row + 1, next.length * 2));
+            }
+            next[row] = -1;
+            if (heads[valueId] < 0) {
+                heads[valueId] = row;
+            } else {
+                next[tails[valueId]] = row;
+            }
+            tails[valueId] = row;
+        }
+
+        // Mark every row whose value contains the search term
+        void match(String searchTerm, boolean caseSensitive, BitSet out) {
+            String lowerTerm = searchTerm.toLowerCase();
+            if (lowerTerm.length() < 3) {
+                for (int id = 0; id < valueCount; id++) {
+                    matchValue(id, searchTerm, lowerTerm, caseSensitive, out);
+                }
+                return;
+            }
+            // Candidates are the values holding the rarest trigram of the term
+            IntList candidates = null;
+            for (int i = 0; i + 3 <= lowerTerm.length(); i++) {
+                IntList ids = trigrams.get(trigram(lowerTerm, i));
+                if (ids == null) {
+                    return; // Some trigram of the term appears in no value at all
+                }
+                if (candidates == null || ids.size() < candidates.size()) {
+                    candidates = ids;
+                }
+            }
+            for (int i = 0; i < candidates.size(); i++) {
+                matchValue(candidates.get(i), searchTerm, lowerTerm, caseSensitive, out);
+            }
+        }
+
+        private void matchValue(int id, String searchTerm, String lowerTerm, boolean caseSensitive, BitSet out) {
+            boolean matches = caseSensitive ? texts[id].contains(searchTerm) : lowerTexts[id].contains(lowerTerm);
+            if (matches) {
+                addPostings(id, out);
+            }
+        }
+
+        // Mark every row on the posting list of the value
+        void addPostings(int valueId, BitSet out) {
+            for (int row = heads[valueId]; row >= 0; row = next[row]) {
+                out.set(row);
+            }
+        }
+
+        void clear() {
+            texts = new String[16];
+            lowerTexts = new String[16];
+            valueCount = 0;
+            trigrams.clear();
+            heads = new int[16];
+            tails = new int[16];
+            next = new int[16];
+        }
+
+        private static long trigram(String text, int offset) {
+            return ((long) text.charAt(offset) << 32) | ((long) text.charAt(offset + 1) << 16) | text.charAt(offset + 2);
+        }
+    }
+}
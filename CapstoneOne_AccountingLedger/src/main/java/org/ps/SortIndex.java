@@ -0,0 +1,198 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+// Precomputed display orders (permutations of row numbers) for every sort key.
+// A permutation is built once with a radix sort over primitive keys and afterwards only the
+// rows added since are sorted and merged in, so switching the sort key never re-sorts the
+// ledger and never moves a row. Returned arrays are never modified afterwards.
+//
+// Vendors and descriptions sort by the rank of their name among the names seen so far. A new name
+// does not change the order of the names already ranked, so it never forces a full re-sort: rows
+// with a name that has no rank yet are compared by the name itself, and the names are re-ranked
+// only once enough new ones have piled up.
+public class SortIndex {
+
+    // The columns the ledger can be sorted by
+    public enum Key {
+        DATE, TIME, AMOUNT, VENDOR, DESCRIPTION
+    }
+
+    private final LedgerStore store;
+    private final DateIndex dates;
+    private final int[][] orders = new int[Key.values().length][]; // Permutation per key
+    private int[] vendorRanks = new int[0]; // Vendor id -> position of the name in sorted order, for the ids ranked so far
+    private int[] descriptionRanks = new int[0]; // Description id -> position in sorted order, likewise
+
+    public SortIndex(LedgerStore store, DateIndex dates) {
+        this.store = store;
+        this.dates = dates;
+    }
+
+    // Map a menu label ("Date", "Amount", ...) to a key, or null if it is not a sort key
+    public static Key keyOf(String criteria) {
+        for (Key key : Key.values()) {
+            if (key.name().equalsIgnoreCase(criteria)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    // Rows in the order of the given key, ties in insertion order
+    public int[] order(Key key) {
+        if (key == Key.DATE) {
+            return dates.allRows(); // Date and time order is already maintained by the date index
+        }
+        int size = store.size();
+        int[] order = orders[key.ordinal()];
+        if (order == null) {
+            refreshRanks(key, 0);
+            order = sortRows(key, 0, size); // First use: every name is ranked, radix sort all rows
+        } else if (order.length < size) {
+            refreshRanks(key, 8); // Re-rank once new names reach 1/8 of the ranked ones; the order stays valid
+            order = merge(key, order, sortAdded(key, order.length, size)); // Merge the new rows in
+        }
+        orders[key.ordinal()] = order;
+        return order;
+    }
+
+    // Sort the rows added since the last call. Rows whose name has no rank yet are sorted by
+    // comparing the names; everything else is radix sorted.
+    private int[] sortAdded(Key key, int from, int to) {
+        if (unranked(key) == 0) {
+            return sortRows(key, from, to);
+        }
+        Integer[] boxed = new Integer[to - from];
+        for (int i = 0; i < boxed.length; i++) {
+            boxed[i] = from + i;
+        }
+        Arrays.sort(boxed, (a, b) -> compare(key, a, b)); // Stable, so ties stay in insertion order
+        int[] rows = new int[boxed.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = boxed[i];
+        }
+        return rows;
+    }
+
+    // Radix sort the rows from (inclusive) to to (exclusive) by key
+    private int[] sortRows(Key key, int from, int to) {
+        int[] rows = new int[to - from];
+        long[] keys = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = from + i;
+            keys[i] = keyOf(key, from + i);
+        }
+        RadixSort.sort(rows, keys, rows.length);
+        return rows;
+    }
+
+    // Merge two sorted permutations into a new array; on ties older rows come first
+    private int[] merge(Key key, int[] existing, int[] added) {
+        int[] merged = new int[existing.length + added.length];
+        int i = 0;
+        int j = 0;
+        int out = 0;
+        while (i < existing.length && j < added.length) {
+            if (compare(key, added[j], existing[i]) < 0) {
+                merged[out++] = added[j++];
+            } else {
+                merged[out++] = existing[i++];
+            }
+        }
+        while (i < existing.length) {
+            merged[out++] = existing[i++];
+        }
+        while (j < added.length) {
+            merged[out++] = added[j++];
+        }
+        return merged;
+    }
+
+    // Compare two rows by key. Names without a rank are compared as strings; ranks follow the string
+    // order, so both ways agree.
+    private int compare(Key key, int rowA, int rowB) {
+        if (key == Key.VENDOR) {
+            return compareNames(store.getVendors(), vendorRanks, store.getVendorId(rowA), store.getVendorId(rowB));
+        }
+        if (key == Key.DESCRIPTION) {
+            return compareNames(store.getDescriptions(), descriptionRanks, store.getDescriptionId(rowA), store.getDescriptionId(rowB));
+        }
+        return Long.compare(keyOf(key, rowA), keyOf(key, rowB));
+    }
+
+    private static int compareNames(StringDictionary dictionary, int[] ranks, int idA, int idB) {
+        if (idA == idB) {
+            return 0;
+        }
+        if (idA < ranks.length && idB < ranks.length) {
+            return Integer.compare(ranks[idA], ranks[idB]);
+        }
+        return dictionary.get(idA).compareTo(dictionary.get(idB));
+    }
+
+    // Primitive sort key of a row; for vendors and descriptions only once every name is ranked
+    private long keyOf(Key key, int row) {
+        switch (key) {
+            case TIME:
+                return store.getSecondOfDay(row);
+            case AMOUNT:
+                return store.getAmountCents(row);
+            case VENDOR:
+                return vendorRanks[store.getVendorId(row)];
+            case DESCRIPTION:
+                return descriptionRanks[store.getDescriptionId(row)];
+            default:
+                return DateIndex.key(store.getEpochDay(row), store.getSecondOfDay(row));
+        }
+    }
+
+    // Names of the key's dictionary that have no rank yet (always 0 for keys without names)
+    private int unranked(Key key) {
+        if (key == Key.VENDOR) {
+            return store.getVendors().size() - vendorRanks.length;
+        }
+        if (key == Key.DESCRIPTION) {
+            return store.getDescriptions().size() - descriptionRanks.length;
+        }
+        return 0;
+    }
+
+    // Rank every name of the key's dictionary once more than 1/fraction of the ranked names are
+    // unranked (fraction 0: whenever any name is unranked). Only the distinct names are sorted.
+    private void refreshRanks(Key key, int fraction) {
+        int unranked = unranked(key);
+        if (unranked == 0) {
+            return;
+        }
+        int[] ranks = key == Key.VENDOR ? vendorRanks : descriptionRanks;
+        if (fraction > 0 && unranked <= ranks.length / fraction) {
+            return;
+        }
+        StringDictionary dictionary = key == Key.VENDOR ? store.getVendors() : store.getDescriptions();
+        Integer[] ids = new Integer[dictionary.size()];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = id;
+        }
+        Arrays.sort(ids, Comparator.comparing(dictionary::get));
+        ranks = new int[ids.length];
+        for (int rank = 0; rank < ids.length; rank++) {
+            ranks[ids[rank]] = rank;
+        }
+        if (key == Key.VENDOR) {
+            vendorRanks = ranks;
+        } else {
+            descriptionRanks = ranks;
+        }
+    }
+
+    // Forget every permutation, e.g. before the ledger is reloaded
+    public void clear() {
+        Arrays.fill(orders, null);
+        vendorRanks = new int[0];
+        descriptionRanks = new int[0];
+    }
+}
@@ -0,0 +1,131 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Interns repeated strings (vendors, descriptions) into small integer ids,
+// so the ledger stores one int per row instead of one String per row.
+// One thread interns at a time; get() and size() may be called from any thread without locking.
+public class StringDictionary {
+    private final Map<String, Integer> ids = new HashMap<>(); // String -> id lookup
+    private volatile String[] values = new String[16]; // id -> String lookup, replaced (never shrunk) when it grows
+    private byte[][] encoded = new byte[16][]; // id -> UTF-8 bytes, used by the byte lookup
+    private int[] byteSlots = new int[32]; // Open addressing table of id + 1 keyed by the UTF-8 bytes
+    private volatile int size; // Number of distinct strings, written after the string is in place
+
+    // Return the id of the given string, adding it to the dictionary if it is new
+    public int intern(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        return add(value, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Return the id of the UTF-8 text in buffer[offset, offset + length).
+    // No String is created unless the text has never been seen before.
+    public int intern(ByteBuffer buffer, int offset, int length) {
+        int hash = hash(buffer, offset, length);
+        int mask = byteSlots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = byteSlots[slot] - 1;
+            if (id < 0) {
+                break;
+            }
+            if (equalsBytes(encoded[id], buffer, offset, length)) {
+                return id;
+            }
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes, 0, length);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        Integer id = ids.get(value); // Same text may have been interned with different bytes (e.g. bad UTF-8)
+        return id != null ? id : add(value, bytes);
+    }
+
+    private int add(String value, byte[] bytes) {
+        int id = size;
+        String[] current = values;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+            encoded = Arrays.copyOf(encoded, id * 2);
+        }
+        current[id] = value;
+        values = current;
+        encoded[id] = bytes;
+        ids.put(value, id);
+        insertSlot(id);
+        size = id + 1;
+        return id;
+    }
+
+    private void insertSlot(int id) {
+        if ((size + 1) * 2 > byteSlots.length) {
+            byteSlots = new int[byteSlots.length * 2];
+            for (int existing = 0; existing < id; existing++) {
+                placeSlot(existing);
+            }
+        }
+        placeSlot(id);
+    }
+
+    private void placeSlot(int id) {
+        byte[] bytes = encoded[id];
+        int mask = byteSlots.length - 1;
+        int slot = hash(ByteBuffer.wrap(bytes), 0, bytes.length) & mask;
+        while (byteSlots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        byteSlots[slot] = id + 1;
+    }
+
+    private static int hash(ByteBuffer buffer, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equalsBytes(byte[] bytes, ByteBuffer buffer, int offset, int length) {
+        if (bytes.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != buffer.get(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Return the id of the given string, or -1 if it has never been interned
+    public int find(String value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    // Return the string for the given id
+    public String get(int id) {
+        return values[id];
+    }
+
+    // Number of distinct strings in the dictionary
+    public int size() {
+        return size;
+    }
+
+    // Remove every string from the dictionary
+    public void clear() {
+        ids.clear();
+        values = new String[16];
+        encoded = new byte[16][];
+        byteSlots = new int[32];
+        size = 0;
+    }
+}
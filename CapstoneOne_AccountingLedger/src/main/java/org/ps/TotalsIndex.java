@@ -0,0 +1,185 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Running income/expense totals kept up to date as rows are added, so reports and totals
+// never have to rescan the ledger.
+//   - grand totals, per day, per month and per year are updated in O(1) per row
+//   - Fenwick trees over the per-day totals answer any date range in O(log days)
+// Income is the sum of positive amounts, expenses the sum of negative amounts (a negative number).
+public class TotalsIndex {
+
+    // Income and expenses for one period, in cents
+    public static final class PeriodTotals {
+        public final long income;
+        public final long expenses; // Zero or negative
+
+        PeriodTotals(long income, long expenses) {
+            this.income = income;
+            this.expenses = expenses;
+        }
+    }
+
+    private static final int INITIAL_DAYS = 1024;
+
+    private final AggregationKernels kernels = AggregationKernels.get(); // Vectorized when the JVM allows
+    private int indexedRows; // Rows of the store already counted
+    private long totalIncome;
+    private long totalExpenses;
+
+    // Dense per-day totals for days [baseDay, baseDay + dayIncome.length)
+    private int baseDay;
+    private long[] dayIncome = new long[0];
+    private long[] dayExpenses = new long[0];
+    private long[] incomeTree = new long[1]; // Fenwick trees over the per-day arrays (1-based)
+    private long[] expensesTree = new long[1];
+
+    private final Map<Integer, long[]> monthTotals = new HashMap<>(); // yyyymm -> {income, expenses}
+    private final Map<Integer, long[]> yearTotals = new HashMap<>(); // yyyy -> {income, expenses}
+
+    // Count every row of the store that has not been counted yet
+    public void update(LedgerStore store) {
+        int size = store.size();
+        // Grand totals straight from the amount column, with exact (vectorized) blockwise sums
+        for (int s = indexedRows >>> LedgerStore.SEGMENT_SHIFT; s < store.segmentCount(); s++) {
+            int segmentStart = s << LedgerStore.SEGMENT_SHIFT;
+            int from = Math.max(indexedRows - segmentStart, 0);
+            int to = Math.min(LedgerStore.SEGMENT_SIZE, size - segmentStart);
+            long[] amounts = store.segment(s).amountCents;
+            totalIncome = Math.addExact(totalIncome, kernels.sumIncome(amounts, from, to));
+            totalExpenses = Math.addExact(totalExpenses, kernels.sumExpenses(amounts, from, to));
+        }
+        for (int row = indexedRows; row < size; row++) {
+            add(store.getEpochDay(row), store.getAmountCents(row));
+        }
+        indexedRows = size;
+    }
+
+    // Count one amount on the given day in the per-day, month and year totals
+    private void add(int epochDay, long amountCents) {
+        if (amountCents == 0) {
+            return;
+        }
+        boolean income = amountCents > 0;
+        int index = dayIndex(epochDay);
+        long[] days = income ? dayIncome : dayExpenses;
+        long[] tree = income ? incomeTree : expensesTree;
+        days[index] += amountCents;
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += amountCents;
+        }
+
+        int ymd = DateTimeCodec.toYearMonthDay(epochDay);
+        long[] month = monthTotals.computeIfAbsent(ymd / 100, key -> new long[2]);
+        long[] year = yearTotals.computeIfAbsent(ymd / 10000, key -> new long[2]);
+        month[income ? 0 : 1] += amountCents;
+        year[income ? 0 : 1] += amountCents;
+    }
+
+    // Position of the day in the dense arrays, growing them if the day is outside the current range
+    private int dayIndex(int epochDay) {
+        if (dayIncome.length == 0) {
+            baseDay = epochDay - INITIAL_DAYS / 2;
+            resize(baseDay, INITIAL_DAYS);
+        } else if (epochDay < baseDay || epochDay >= baseDay + dayIncome.length) {
+            int low = Math.min(baseDay, epochDay);
+            int high = Math.max(baseDay + dayIncome.length, epochDay + 1);
+            int length = Integer.highestOneBit(high - low) << 1; // Double the range to keep growth amortized
+            resize(epochDay < baseDay ? high - length : low, length);
+        }
+        return epochDay - baseDay;
+    }
+
+    private void resize(int newBaseDay, int length) {
+        long[] income = new long[length];
+        long[] expenses = new long[length];
+        int shift = baseDay - newBaseDay;
+        for (int i = 0; i < dayIncome.length; i++) {
+            income[i + shift] = dayIncome[i];
+            expenses[i + shift] = dayExpenses[i];
+        }
+        baseDay = newBaseDay;
+        dayIncome = income;
+        dayExpenses = expenses;
+        incomeTree = buildTree(income);
+        expensesTree = buildTree(expenses);
+    }
+
+    // Build a Fenwick tree over values in O(n)
+    private static long[] buildTree(long[] values) {
+        long[] tree = new long[values.length + 1];
+        System.arraycopy(values, 0, tree, 1, values.length);
+        for (int i = 1; i < tree.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+        return tree;
+    }
+
+    // Sum of the first count days of the dense range
+    private static long prefix(long[] tree, int count) {
+        long sum = 0;
+        for (int i = count; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    // Totals for the whole ledger
+    public PeriodTotals getTotals() {
+        return new PeriodTotals(totalIncome, totalExpenses);
+    }
+
+    // Totals for the days from fromDay to toDay (inclusive); Integer.MIN_VALUE and MAX_VALUE leave an end open
+    public PeriodTotals getRangeTotals(int fromDay, int toDay) {
+        int from = (int) Math.max((long) fromDay - baseDay, 0); // Long, so an open end cannot overflow
+        int to = (int) Math.min((long) toDay - baseDay, dayIncome.length - 1);
+        if (dayIncome.length == 0 || from > to) {
+            return new PeriodTotals(0, 0);
+        }
+        return new PeriodTotals(prefix(incomeTree, to + 1) - prefix(incomeTree, from),
+                prefix(expensesTree, to + 1) - prefix(expensesTree, from));
+    }
+
+    // Totals of the rows of a store dated fromDay to toDay (inclusive), by a scan of its columns; for
+    // stores with no index of their own, such as a partition file or an archive block just read
+    public static PeriodTotals scan(LedgerStore store, int fromDay, int toDay) {
+        AggregationKernels kernels = AggregationKernels.get();
+        long[] totals = new long[2];
+        for (int s = 0; s < store.segmentCount(); s++) {
+            LedgerStore.Segment segment = store.segment(s);
+            kernels.sumInRange(segment.epochDays, segment.amountCents, 0, store.segmentLength(s), fromDay, toDay, totals);
+        }
+        return new PeriodTotals(totals[0], totals[1]);
+    }
+
+    // Totals for one calendar month (month is 1-12)
+    public PeriodTotals getMonthTotals(int year, int month) {
+        long[] totals = monthTotals.getOrDefault(year * 100 + month, new long[2]);
+        return new PeriodTotals(totals[0], totals[1]);
+    }
+
+    // Totals for one calendar year
+    public PeriodTotals getYearTotals(int year) {
+        long[] totals = yearTotals.getOrDefault(year, new long[2]);
+        return new PeriodTotals(totals[0], totals[1]);
+    }
+
+    // Forget everything, e.g. before the ledger is reloaded
+    public void clear() {
+        indexedRows = 0;
+        totalIncome = 0;
+        totalExpenses = 0;
+        dayIncome = new long[0];
+        dayExpenses = new long[0];
+        incomeTree = new long[1];
+        expensesTree = new long[1];
+        monthTotals.clear();
+        yearTotals.clear();
+    }
+}
@@ -2,38 +2,57 @@
 
 package org.ps;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-
 public class Transaction {
-    private String date; // Transaction date
-    private String time; // Transaction time
+    private int epochDay; // Transaction date, packed as days since 1970-01-01
+    private int secondOfDay; // Transaction time, packed as seconds since midnight
     private String description; // Transaction description
     private String vendor; // Vendor for the transaction
-    private double amount; // Transaction amount
+    private long amountCents; // Transaction amount in cents
 
     // Constructor
     public Transaction(String date, String time, String description, String vendor, double amount) {
-        if (!isValidDate(date)) {
+        this(DateTimeCodec.parseDate(date), DateTimeCodec.parseTime(time), description, vendor, amount);
+    }
+
+    // Constructor from an already packed date and time
+    public Transaction(int epochDay, int secondOfDay, String description, String vendor, double amount) {
+        this(epochDay, secondOfDay, description, vendor, Money.ofDouble(amount));
+    }
+
+    // Create a transaction from an amount that is already in cents
+    public static Transaction ofCents(int epochDay, int secondOfDay, String description, String vendor, long amountCents) {
+        return new Transaction(epochDay, secondOfDay, description, vendor, amountCents);
+    }
+
+    private Transaction(int epochDay, int secondOfDay, String description, String vendor, long amountCents) {
+        if (epochDay == DateTimeCodec.INVALID) {
             throw new IllegalArgumentException("Invalid date format. Expected format: yyyy-MM-dd");
         }
-        if (!isValidTime(time)) {
+        if (secondOfDay < 0 || secondOfDay >= 86400) {
             throw new IllegalArgumentException("Invalid time format. Expected format: HH:mm:ss");
         }
-        this.date = date;
-        this.time = time;
+        this.epochDay = epochDay;
+        this.secondOfDay = secondOfDay;
         this.description = description;
         this.vendor = vendor;
-        this.amount = amount;
+        this.amountCents = amountCents;
     }
 
     // Getters
     public String getDate() {
-        return date;
+        return DateTimeCodec.formatDate(epochDay);
     }
 
     public String getTime() {
-        return time;
+        return DateTimeCodec.formatTime(secondOfDay);
+    }
+
+    public int getEpochDay() {
+        return epochDay;
+    }
+
+    public int getSecondOfDay() {
+        return secondOfDay;
     }
 
     public String getDescription() {
@@ -45,81 +64,76 @@ public class Transaction {
     }
 
     public double getAmount() {
-        return amount;
+        return Money.toDouble(amountCents);
+    }
+
+    public long getAmountCents() {
+        return amountCents;
     }
 
     // Check if the transaction matches the search term with case sensitivity option
     public boolean matchesSearchTerm(String searchTerm, boolean caseSensitive) {
         String search = caseSensitive ? searchTerm : searchTerm.toLowerCase();
+        String date = getDate();
+        String time = getTime();
 
         return (caseSensitive ? date : date.toLowerCase()).contains(search) ||
                 (caseSensitive ? time : time.toLowerCase()).contains(search) ||
                 (caseSensitive ? description : description.toLowerCase()).contains(search) ||
                 (caseSensitive ? vendor : vendor.toLowerCase()).contains(search) ||
-                String.valueOf(amount).contains(search);
+                String.valueOf(getAmount()).contains(search);
     }
 
     // Check if the date format is valid (yyyy-MM-dd)
     public static boolean isValidDate(String date) {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-        sdf.setLenient(false);
-        try {
-            sdf.parse(date);
-            return true;
-        } catch (ParseException e) {
-            return false;
-        }
+        return DateTimeCodec.isValidDate(date);
     }
 
     // Check if the time format is valid (HH:mm:ss)
     public static boolean isValidTime(String time) {
-        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
-        sdf.setLenient(false);
-        try {
-            sdf.parse(time);
-            return true;
-        } catch (ParseException e) {
-            return false;
-        }
+        return DateTimeCodec.isValidTime(time);
     }
 
     // Get the transaction type: "Income" if positive, "Expense" if negative
     public String getTransactionType() {
-        return amount >= 0 ? "Income" : "Expense";
+        return amountCents >= 0 ? "Income" : "Expense";
     }
 
     // Parse a transaction from a CSV line (assuming '|' as delimiter)
     public static Transaction fromCsv(String csvLine) {
-        String[] fields = csvLine.split("\\|");
+        // Locate the four '|' separators without a regex split
+        int p1 = csvLine.indexOf('|');
+        int p2 = p1 < 0 ? -1 : csvLine.indexOf('|', p1 + 1);
+        int p3 = p2 < 0 ? -1 : csvLine.indexOf('|', p2 + 1);
+        int p4 = p3 < 0 ? -1 : csvLine.indexOf('|', p3 + 1);
 
         // Ensure that the line has exactly 5 fields
-        if (fields.length != 5) {
+        if (p4 < 0 || csvLine.indexOf('|', p4 + 1) >= 0) {
             System.out.println("Skipping malformed line: " + csvLine);
             return null; // Return null if the line is malformed
         }
 
-        try {
-            String date = fields[0].trim();
-            String time = fields[1].trim();
-            String description = fields[2].trim();
-            String vendor = fields[3].trim();
-            double amount = Double.parseDouble(fields[4].trim().replace("$", ""));
-            return new Transaction(date, time, description, vendor, amount);
-        } catch (NumberFormatException e) {
+        String date = csvLine.substring(0, p1).trim();
+        String time = csvLine.substring(p1 + 1, p2).trim();
+        long amountCents = Money.parse(csvLine.substring(p4 + 1).trim());
+        if (amountCents == Money.INVALID) {
             System.out.println("Error parsing amount in line: " + csvLine);
             return null; // Return null if there's a number formatting issue
         }
+        String description = csvLine.substring(p2 + 1, p3).trim(); // Only built once the amount parsed
+        String vendor = csvLine.substring(p3 + 1, p4).trim();
+        return ofCents(DateTimeCodec.parseDate(date), DateTimeCodec.parseTime(time), description, vendor, amountCents);
     }
 
-    // Convert transaction details to CSV format
+    // Convert transaction details to CSV format; the amount is written from the cents with two decimals
     public String toCSV() {
-        return String.join("|", date, time, description, vendor, String.valueOf(amount));
+        return String.join("|", getDate(), getTime(), description, vendor, Money.format(amountCents));
     }
 
     // Return the formatted transaction as a string for display
     @Override
     public String toString() {
-        return String.format("%-10s %-8s %-30s %-20s %-10.2f", date, time, description, vendor, amount);
+        return String.format("%-10s %-8s %-30s %-20s %-10s", getDate(), getTime(), description, vendor, Money.format(amountCents));
     }
 
     // Static method to return the header for the ledger
@@ -0,0 +1,17 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+// Where new transactions are written: the single transactions.csv journal or the per-month partitions
+public interface TransactionLog extends Closeable {
+
+    // Append one transaction, returning once it is written
+    void append(Transaction transaction) throws IOException;
+
+    // Append many transactions as one batch
+    void appendAll(List<Transaction> transactions) throws IOException;
+}
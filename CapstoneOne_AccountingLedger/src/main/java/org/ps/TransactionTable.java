@@ -0,0 +1,176 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.BitSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Scrollable transaction table for the GUI.
+// Clicking a column header sorts by it and the filter field narrows the rows with the search index.
+// The row order is computed on a background thread and handed to the table on the event dispatch
+// thread, so the GUI stays responsive however large the ledger is.
+public class TransactionTable extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    // One background thread computes every view, so sorts and filters never run concurrently
+    private static final ExecutorService VIEW_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ledger-view");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final transient Ledger ledger;
+    private final int[] baseRows; // Rows this table may show, null for the whole ledger
+    private final LedgerTableModel model;
+    private final JTable table;
+    private final JTextField filterField = new JTextField(20);
+    private final JCheckBox caseSensitiveBox = new JCheckBox("Case Sensitive");
+    private final JLabel status = new JLabel(" ");
+    private SortIndex.Key sortKey;
+    private int generation; // Increased for every request, so late results of older requests are dropped
+
+    // Builds the components only; create() lays them out, adds the listeners and loads the first view
+    private TransactionTable(Ledger ledger, int[] baseRows, SortIndex.Key sortKey) {
+        super(new BorderLayout());
+        this.ledger = ledger;
+        this.baseRows = baseRows;
+        this.sortKey = sortKey;
+        this.model = new LedgerTableModel(ledger.getStore());
+        this.table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        table.getTableHeader().setReorderingAllowed(false);
+        DefaultTableCellRenderer right = new DefaultTableCellRenderer();
+        right.setHorizontalAlignment(SwingConstants.RIGHT);
+        table.getColumnModel().getColumn(4).setCellRenderer(right);
+    }
+
+    // A table of the given rows (null for every row), sorted by the key (null for insertion order)
+    public static TransactionTable create(Ledger ledger, int[] baseRows, SortIndex.Key sortKey) {
+        TransactionTable view = new TransactionTable(ledger, baseRows, sortKey);
+        view.install();
+        return view;
+    }
+
+    // Lay out the components and add the listeners, once the table is fully constructed
+    private void install() {
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent evt) {
+                int column = table.columnAtPoint(evt.getPoint());
+                if (column >= 0) {
+                    setSortKey(LedgerTableModel.sortKeyOf(column));
+                }
+            }
+        });
+
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filterPanel.add(new JLabel("Filter:"));
+        filterPanel.add(filterField);
+        filterPanel.add(caseSensitiveBox);
+        filterField.addActionListener(e -> refresh());
+        caseSensitiveBox.addActionListener(e -> refresh());
+
+        add(filterPanel, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(status, BorderLayout.SOUTH);
+        refresh();
+    }
+
+    // Open a window with a table of the given rows (null for every row)
+    public static void show(Component parent, String title, Ledger ledger, int[] rows, SortIndex.Key sortKey) {
+        JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(parent), title);
+        dialog.getContentPane().add(create(ledger, rows, sortKey));
+        dialog.setSize(800, 500);
+        dialog.setLocationRelativeTo(parent);
+        dialog.setVisible(true);
+    }
+
+    // Sort the view by a column
+    public void setSortKey(SortIndex.Key sortKey) {
+        this.sortKey = sortKey;
+        refresh();
+    }
+
+    // Recompute the rows in view on the background thread
+    public void refresh() {
+        int request = ++generation;
+        SortIndex.Key key = sortKey;
+        String filter = filterField.getText().trim();
+        boolean caseSensitive = caseSensitiveBox.isSelected();
+        status.setText("Loading...");
+
+        SwingWorker<int[], Void> worker = new SwingWorker<>() {
+            @Override
+            protected int[] doInBackground() {
+                return computeRows(key, filter, caseSensitive);
+            }
+
+            @Override
+            protected void done() {
+                if (request != generation) {
+                    return; // A newer request is already on its way
+                }
+                try {
+                    int[] rows = get();
+                    model.setRows(rows);
+                    status.setText(rows.length + " transactions");
+                } catch (InterruptedException | ExecutionException e) {
+                    status.setText("Could not load transactions: " + e.getCause());
+                }
+            }
+        };
+        VIEW_EXECUTOR.execute(worker);
+    }
+
+    // Rows in view: the base rows, narrowed by the filter, in the order of the sort key
+    private int[] computeRows(SortIndex.Key key, String filter, boolean caseSensitive) {
+        BitSet allowed = null;
+        if (baseRows != null) {
+            allowed = new BitSet();
+            for (int row : baseRows) {
+                allowed.set(row);
+            }
+        }
+        if (!filter.isEmpty()) {
+            BitSet matches = new BitSet();
+            for (int row : ledger.search(filter, caseSensitive)) {
+                matches.set(row);
+            }
+            if (allowed == null) {
+                allowed = matches;
+            } else {
+                allowed.and(matches);
+            }
+        }
+
+        int[] order;
+        if (key != null) {
+            order = ledger.order(key);
+        } else if (baseRows != null) {
+            order = baseRows;
+        } else {
+            order = new int[ledger.getStore().size()]; // Insertion order
+            for (int row = 0; row < order.length; row++) {
+                order[row] = row;
+            }
+        }
+        if (allowed == null) {
+            return order;
+        }
+        int[] rows = new int[allowed.cardinality()];
+        int count = 0;
+        for (int row : order) {
+            if (allowed.get(row)) {
+                rows[count++] = row;
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,116 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// Aggregation loops on the Vector API. Only loaded (by name) when jdk.incubator.vector is present.
+//
+// Sums run in blocks like Money.sum: lanes are added with plain vector adds and the lane-wise OR of
+// the magnitudes tells whether the block could have overflowed; only such a block is redone with
+// exact scalar additions. Signs and date predicates become lane masks through arithmetic shifts,
+// so every loop is straight-line lanewise arithmetic without compares or blends.
+public class VectorKernels implements AggregationKernels {
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    // Ints with the same lane count as LONGS, so a day mask can select amounts
+    private static final VectorSpecies<Integer> DAYS = VectorSpecies.of(int.class,
+            VectorShape.forBitSize(LONGS.vectorBitSize() / 2));
+    private static final int SUM_BLOCK = 1024; // Rows added between overflow checks
+    private static final long SAFE_MAGNITUDE = 1L << 52; // 1024 values below 2^52 cannot overflow a long
+
+    @Override
+    public long sumIncome(long[] values, int from, int to) {
+        return sumSigned(values, from, to, true);
+    }
+
+    @Override
+    public long sumExpenses(long[] values, int from, int to) {
+        return sumSigned(values, from, to, false);
+    }
+
+    // Sign masks instead of compares and blends: for each lane, amount >> 63 is -1 for negative
+    // amounts and 0 otherwise, so ANDing with it (or its complement) keeps only one sign
+    private static long sumSigned(long[] values, int from, int to, boolean income) {
+        long flip = income ? -1L : 0L; // XORed into the sign mask to keep positives instead of negatives
+        long total = 0;
+        for (int start = from; start < to; start += SUM_BLOCK) {
+            int end = Math.min(start + SUM_BLOCK, to);
+            LongVector sums = LongVector.zero(LONGS);
+            LongVector magnitudes = LongVector.zero(LONGS);
+            int i = start;
+            for (int upper = start + LONGS.loopBound(end - start); i < upper; i += LONGS.length()) {
+                LongVector amounts = LongVector.fromArray(LONGS, values, i);
+                LongVector sign = amounts.lanewise(VectorOperators.ASHR, 63);
+                LongVector kept = amounts.and(sign.lanewise(VectorOperators.XOR, flip));
+                sums = sums.add(kept);
+                magnitudes = magnitudes.or(kept.lanewise(VectorOperators.XOR, kept.lanewise(VectorOperators.ASHR, 63)));
+            }
+            long block = sums.reduceLanes(VectorOperators.ADD);
+            long magnitude = magnitudes.reduceLanes(VectorOperators.OR);
+            for (; i < end; i++) {
+                long amount = values[i];
+                if (income ? amount > 0 : amount < 0) {
+                    block += amount;
+                    magnitude |= amount ^ (amount >> 63);
+                }
+            }
+            if (magnitude >= SAFE_MAGNITUDE) {
+                block = income ? Money.sumIncome(values, start, end) : Money.sumExpenses(values, start, end);
+            }
+            total = Math.addExact(total, block);
+        }
+        return total;
+    }
+
+    @Override
+    public void sumInRange(int[] epochDays, long[] amounts, int from, int to, int fromDay, int toDay, long[] totals) {
+        long income = 0;
+        long expenses = 0;
+        for (int start = from; start < to; start += SUM_BLOCK) {
+            int end = Math.min(start + SUM_BLOCK, to);
+            LongVector incomeSums = LongVector.zero(LONGS);
+            LongVector expenseSums = LongVector.zero(LONGS);
+            LongVector magnitudes = LongVector.zero(LONGS);
+            int i = start;
+            for (int upper = start + LONGS.loopBound(end - start); i < upper; i += LONGS.length()) {
+                LongVector days = (LongVector) IntVector.fromArray(DAYS, epochDays, i)
+                        .convertShape(VectorOperators.I2L, LONGS, 0);
+                // (day - fromDay) | (toDay - day) is negative exactly when the day is outside the range
+                LongVector outside = days.sub(fromDay).or(days.neg().add(toDay)).lanewise(VectorOperators.ASHR, 63);
+                LongVector values = LongVector.fromArray(LONGS, amounts, i).and(outside.not());
+                LongVector sign = values.lanewise(VectorOperators.ASHR, 63);
+                incomeSums = incomeSums.add(values.and(sign.not()));
+                expenseSums = expenseSums.add(values.and(sign));
+                magnitudes = magnitudes.or(values.lanewise(VectorOperators.XOR, sign));
+            }
+            long blockIncome = incomeSums.reduceLanes(VectorOperators.ADD);
+            long blockExpenses = expenseSums.reduceLanes(VectorOperators.ADD);
+            long magnitude = magnitudes.reduceLanes(VectorOperators.OR);
+            if (magnitude >= SAFE_MAGNITUDE) {
+                long[] exact = new long[2];
+                new ScalarKernels().sumInRange(epochDays, amounts, start, i, fromDay, toDay, exact);
+                blockIncome = exact[0];
+                blockExpenses = exact[1];
+            }
+            for (; i < end; i++) {
+                int day = epochDays[i];
+                if (day >= fromDay && day <= toDay) {
+                    long amount = amounts[i];
+                    if (amount > 0) {
+                        blockIncome = Math.addExact(blockIncome, amount);
+                    } else {
+                        blockExpenses = Math.addExact(blockExpenses, amount);
+                    }
+                }
+            }
+            income = Math.addExact(income, blockIncome);
+            expenses = Math.addExact(expenses, blockExpenses);
+        }
+        totals[0] = Math.addExact(totals[0], income);
+        totals[1] = Math.addExact(totals[1], expenses);
+    }
+}
@@ -0,0 +1,117 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Per-vendor posting lists and totals.
+// Vendors are already interned to integer ids by the store's dictionary; this index keeps, for
+// every vendor id, the rows that use it plus a running count, income and expenses. A vendor search
+// only has to match the (small) list of distinct vendor names and then expand their postings.
+public class VendorIndex {
+    private int indexedRows; // Rows of the store already indexed
+    private StringDictionary vendors = new StringDictionary(); // The store's vendor dictionary
+    private String[] lowerNames = new String[16]; // Vendor id -> lower-cased name, computed once
+    private IntList[] postings = new IntList[16]; // Vendor id -> rows, in row order
+    private int[] counts = new int[16];
+    private long[] income = new long[16]; // In cents
+    private long[] expenses = new long[16]; // In cents, zero or negative
+    private int vendorCount;
+
+    // Index every row of the store that has not been indexed yet
+    public void update(LedgerStore store) {
+        vendors = store.getVendors();
+        while (vendorCount < vendors.size()) {
+            addVendor(vendors.get(vendorCount));
+        }
+        int size = store.size();
+        for (int row = indexedRows; row < size; row++) {
+            int vendorId = store.getVendorId(row);
+            long amount = store.getAmountCents(row);
+            postings[vendorId].add(row);
+            counts[vendorId]++;
+            if (amount > 0) {
+                income[vendorId] += amount;
+            } else {
+                expenses[vendorId] += amount;
+            }
+        }
+        indexedRows = size;
+    }
+
+    private void addVendor(String name) {
+        int id = vendorCount++;
+        if (id == postings.length) {
+            int length = id * 2;
+            lowerNames = Arrays.copyOf(lowerNames, length);
+            postings = Arrays.copyOf(postings, length);
+            counts = Arrays.copyOf(counts, length);
+            income = Arrays.copyOf(income, length);
+            expenses = Arrays.copyOf(expenses, length);
+        }
+        lowerNames[id] = name.toLowerCase();
+        postings[id] = new IntList();
+    }
+
+    // Ids of the vendors whose name contains the search term, ignoring case
+    public int[] findVendors(String searchTerm) {
+        String lowerTerm = searchTerm.toLowerCase();
+        IntList ids = new IntList();
+        for (int id = 0; id < vendorCount; id++) {
+            if (lowerNames[id].contains(lowerTerm)) {
+                ids.add(id);
+            }
+        }
+        return ids.toArray();
+    }
+
+    // Rows of all the given vendors, in row order
+    public int[] rowsOf(int[] vendorIds) {
+        if (vendorIds.length == 1) {
+            return postings[vendorIds[0]].toArray(); // Already in row order
+        }
+        BitSet rows = new BitSet(indexedRows);
+        for (int vendorId : vendorIds) {
+            IntList list = postings[vendorId];
+            for (int i = 0; i < list.size(); i++) {
+                rows.set(list.get(i));
+            }
+        }
+        return rows.stream().toArray();
+    }
+
+    public String getName(int vendorId) {
+        return vendors.get(vendorId);
+    }
+
+    // Number of distinct vendors
+    public int size() {
+        return vendorCount;
+    }
+
+    // Precomputed totals for one vendor
+    public int getCount(int vendorId) {
+        return counts[vendorId];
+    }
+
+    public long getIncome(int vendorId) {
+        return income[vendorId];
+    }
+
+    public long getExpenses(int vendorId) {
+        return expenses[vendorId];
+    }
+
+    // Forget every row, e.g. before the ledger is reloaded
+    public void clear() {
+        indexedRows = 0;
+        vendors = new StringDictionary();
+        lowerNames = new String[16];
+        postings = new IntList[16];
+        counts = new int[16];
+        income = new long[16];
+        expenses = new long[16];
+        vendorCount = 0;
+    }
+}
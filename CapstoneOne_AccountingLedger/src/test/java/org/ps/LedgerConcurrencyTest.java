@@ -0,0 +1,236 @@
+// Version 2.0 (the "MIT"); you may use this file
+
+package org.ps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Stress test of the ledger shared between threads: writers append with add and addAll while
+// readers keep running totals, searches and date ranges against it. Once the writers are done, the
+// row count, the totals and every index must match the rows that were appended, and no reader may
+// have failed or seen a row that was not there yet.
+class LedgerConcurrencyTest {
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int BATCHES = 300; // Per writer; every other batch is a single add
+    private static final int BATCH_ROWS = 64;
+    private static final int FIRST_DAY = (int) LocalDate.of(2023, 1, 1).toEpochDay();
+    private static final int DAYS = 730;
+
+    @Test
+    @Timeout(120)
+    void writersAndReadersShareTheLedger() throws Exception {
+        Ledger ledger = new Ledger();
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        try {
+            List<Future<List<Transaction>>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                writers.add(pool.submit(() -> {
+                    start.await();
+                    return write(ledger, writer);
+                }));
+            }
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < READERS; r++) {
+                int reader = r;
+                readers.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        while (writing.get()) {
+                            read(ledger, reader);
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            List<List<Transaction>> appended = new ArrayList<>();
+            for (Future<List<Transaction>> writer : writers) {
+                appended.add(writer.get());
+            }
+            writing.set(false);
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+            assertTrue(failures.isEmpty(), () -> "reader failed: " + failures.peek());
+
+            checkLedger(ledger, appended);
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    // Append every row of one writer, alternating single adds and batches; returns the rows in order
+    private static List<Transaction> write(Ledger ledger, int writer) {
+        List<Transaction> written = new ArrayList<>();
+        int n = 0;
+        for (int batch = 0; batch < BATCHES; batch++) {
+            if (batch % 2 == 0) {
+                Transaction transaction = row(writer, n++);
+                ledger.add(transaction);
+                written.add(transaction);
+            } else {
+                List<Transaction> rows = new ArrayList<>();
+                for (int i = 0; i < BATCH_ROWS; i++) {
+                    rows.add(row(writer, n++));
+                }
+                ledger.addAll(rows);
+                written.addAll(rows);
+            }
+        }
+        return written;
+    }
+
+    // Row n of a writer. The vendor names the writer, so searches can tell the writers apart.
+    private static Transaction row(int writer, int n) {
+        int day = FIRST_DAY + (n * 7 + writer) % DAYS;
+        long cents = (n % 5 == 0 ? -1 : 1) * (100L + n * 13L + writer);
+        return Transaction.ofCents(day, (n * 37) % 86400, "item " + n, vendor(writer), cents);
+    }
+
+    private static String vendor(int writer) {
+        return "Vendor#" + writer + "#";
+    }
+
+    // One round of reads. Each read must only see whole rows: every row it returns is already in
+    // the store and matches what was asked for.
+    private static void read(Ledger ledger, int reader) {
+        LedgerStore store = ledger.getStore();
+        TotalsIndex.PeriodTotals totals = ledger.read(() -> ledger.getTotals().getTotals());
+        assertTrue(totals.income >= 0 && totals.expenses <= 0);
+        ledger.read(() -> ledger.getTotals().getRangeTotals(FIRST_DAY, FIRST_DAY + 30));
+
+        String term = "#" + (reader % WRITERS) + "#";
+        int fromDay = FIRST_DAY + reader * 10;
+        int toDay = fromDay + 90;
+        checkSearch(store, ledger.search(term, false), term);
+        checkDates(store, ledger.rowsBetween(fromDay, toDay), fromDay, toDay);
+        checkRows(store, ledger.order(SortIndex.Key.AMOUNT));
+
+        // The same lookups straight on the indexes, past the result cache
+        ledger.readLocked(() -> {
+            checkSearch(store, ledger.getSearch().search(term, false), term);
+            checkDates(store, ledger.getDates().rowsBetween(fromDay, toDay), fromDay, toDay);
+            VendorIndex vendors = ledger.getVendors();
+            checkSearch(store, vendors.rowsOf(vendors.findVendors(term)), term);
+            return null;
+        });
+    }
+
+    private static void checkSearch(LedgerStore store, int[] rows, String term) {
+        checkRows(store, rows);
+        for (int row : rows) {
+            assertTrue(store.getVendor(row).contains(term), () -> "row " + row + " does not match " + term);
+        }
+    }
+
+    private static void checkDates(LedgerStore store, int[] rows, int fromDay, int toDay) {
+        checkRows(store, rows);
+        for (int row : rows) {
+            int day = store.getEpochDay(row);
+            assertTrue(day >= fromDay && day <= toDay, () -> "row " + row + " dated outside the range");
+        }
+    }
+
+    private static void checkRows(LedgerStore store, int[] rows) {
+        int size = store.size();
+        for (int row : rows) {
+            assertTrue(row >= 0 && row < size, () -> "row " + row + " of " + size);
+        }
+    }
+
+    private static void checkLedger(Ledger ledger, List<List<Transaction>> appended) {
+        LedgerStore store = ledger.getStore();
+        int expectedRows = 0;
+        long income = 0;
+        long expenses = 0;
+        long rangeIncome = 0;
+        long rangeExpenses = 0;
+        int rangeRows = 0;
+        int rangeFrom = FIRST_DAY + 100;
+        int rangeTo = FIRST_DAY + 200;
+        for (List<Transaction> rows : appended) {
+            expectedRows += rows.size();
+            for (Transaction transaction : rows) {
+                long cents = transaction.getAmountCents();
+                boolean inRange = transaction.getEpochDay() >= rangeFrom && transaction.getEpochDay() <= rangeTo;
+                if (cents > 0) {
+                    income += cents;
+                    rangeIncome += inRange ? cents : 0;
+                } else {
+                    expenses += cents;
+                    rangeExpenses += inRange ? cents : 0;
+                }
+                rangeRows += inRange ? 1 : 0;
+            }
+        }
+
+        assertEquals(expectedRows, store.size());
+        TotalsIndex.PeriodTotals totals = ledger.getTotals().getTotals();
+        assertEquals(income, totals.income);
+        assertEquals(expenses, totals.expenses);
+        TotalsIndex.PeriodTotals range = ledger.getTotals().getRangeTotals(rangeFrom, rangeTo);
+        assertEquals(rangeIncome, range.income);
+        assertEquals(rangeExpenses, range.expenses);
+        assertEquals(expectedRows, ledger.getDates().size());
+        assertEquals(rangeRows, ledger.rowsBetween(rangeFrom, rangeTo).length);
+
+        // Each writer's rows appear in the store in the order it appended them, and the search and
+        // vendor postings list exactly those rows
+        for (int writer = 0; writer < appended.size(); writer++) {
+            List<Transaction> rows = appended.get(writer);
+            List<Integer> stored = new ArrayList<>();
+            for (int row = 0; row < store.size(); row++) {
+                if (store.getVendor(row).equals(vendor(writer))) {
+                    stored.add(row);
+                }
+            }
+            assertEquals(rows.size(), stored.size());
+            long vendorIncome = 0;
+            long vendorExpenses = 0;
+            for (int i = 0; i < rows.size(); i++) {
+                assertEquals(rows.get(i).toCSV(), store.toTransaction(stored.get(i)).toCSV());
+                long cents = rows.get(i).getAmountCents();
+                if (cents > 0) {
+                    vendorIncome += cents;
+                } else {
+                    vendorExpenses += cents;
+                }
+            }
+            int[] expected = stored.stream().mapToInt(Integer::intValue).toArray();
+            assertArrayEquals(expected, ledger.search("#" + writer + "#", false));
+
+            VendorIndex vendors = ledger.getVendors();
+            int[] ids = vendors.findVendors(vendor(writer));
+            assertEquals(1, ids.length);
+            assertArrayEquals(expected, vendors.rowsOf(ids));
+            assertEquals(rows.size(), vendors.getCount(ids[0]));
+            assertEquals(vendorIncome, vendors.getIncome(ids[0]));
+            assertEquals(vendorExpenses, vendors.getExpenses(ids[0]));
+        }
+    }
+}